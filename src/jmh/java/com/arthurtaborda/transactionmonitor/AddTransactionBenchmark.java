@@ -0,0 +1,91 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Throughput of {@link TransactionRepository#addTransaction(double, long)} with 1 to 32 concurrent writers, alone
+ * or followed by {@link TopTransactions#add} like the API does, with one stripe per core.
+ * Iterations are kept short so the whole run fits inside the 60 seconds window.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddTransactionBenchmark {
+
+    @Param({"bucketed", "striped", "singlewriter", "inmem"})
+    public String repositoryType;
+
+    @Param({"false", "true"})
+    public boolean withTop;
+
+    private final Repositories repositories = new Repositories();
+    private TransactionRepository repository;
+    private TopTransactions top;
+
+    @Setup
+    public void setUp() {
+        repository = repositories.create(repositoryType);
+        top = new TopTransactions(0, Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        repositories.close(repository);
+    }
+
+    private boolean add() {
+        try {
+            long now = currentTimeMillis();
+            return repository.addTransaction(100.5, now) && (!withTop || top.add(100.5, now, null));
+        } catch (RepositoryOverloadedException e) {
+            // the ring of the single writer is full, the transaction is shed
+            return false;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean add_1_thread() {
+        return add();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean add_8_threads() {
+        return add();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean add_16_threads() {
+        return add();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean add_32_threads() {
+        return add();
+    }
+}
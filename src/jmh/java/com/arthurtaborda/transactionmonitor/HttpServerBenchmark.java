@@ -0,0 +1,97 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Load test of POST /transactions: 64 keep-alive clients against 1 to 8 {@link RestApi} instances.
+ * Requests per second should scale with the instances until the cores or the clients are saturated.
+ * <p>
+ * The requests are handled on the event loops, the Vert.x worker pool or a virtual thread each, to compare the
+ * cost of leaving the event loop. Virtual threads need Java 21, on older JVMs they are platform threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class HttpServerBenchmark {
+
+    private static final int PORT = 9191;
+
+    @Param({"1", "2", "4", "8"})
+    public int instances;
+
+    @Param({"eventloop", "worker", "virtual"})
+    public String handlerThreads;
+
+    private Vertx vertx;
+    private URL url;
+
+    @Setup
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(instances));
+        CompletableFuture<Void> deployed = new CompletableFuture<>();
+        TransactionMonitor.deploy(vertx, PORT, new BucketedTransactionRepository(), new DimensionStatistics(),
+                                  new TopTransactions(), false,
+                                  TransactionMonitor.createHandlerExecutor(handlerThreads, vertx), instances)
+                          .setHandler(result -> deployed.complete(null));
+        deployed.get(10, TimeUnit.SECONDS);
+        url = new URL("http://localhost:" + PORT + "/transactions");
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public int postTransaction() throws IOException {
+        byte[] body = ("{\"amount\":100.5,\"timestamp\":" + currentTimeMillis() + "}").getBytes(US_ASCII);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+        int status = connection.getResponseCode();
+        try (InputStream input = connection.getInputStream()) {
+            while (input.read() != -1) {
+                // drains the response so the connection is reused
+            }
+        }
+        return status;
+    }
+}
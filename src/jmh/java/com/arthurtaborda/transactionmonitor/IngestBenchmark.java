@@ -0,0 +1,199 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Transactions per second of the ingestion protocols, with 16 producers: binary frames of {@link #BATCH_SIZE}
+ * transactions over TCP, with up to {@link #PIPELINED_FRAMES} frames waiting for their ack, against the same
+ * batches posted as JSON arrays to /transactions/batch and single transactions posted to /transactions.
+ * <p>
+ * Every protocol also adds the transactions to one {@link TopTransactions}, with a stripe per event loop, like the
+ * monitor does. The CPU time of the Vert.x event loops per accepted transaction is printed after every iteration,
+ * the producers run in the same JVM but on other threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class IngestBenchmark {
+
+    private static final int HTTP_PORT = 9192;
+    private static final int BINARY_PORT = 9193;
+    private static final int INSTANCES = 2;
+    private static final int BATCH_SIZE = 256;
+    private static final int PIPELINED_FRAMES = 8;
+
+    private Vertx vertx;
+    private long iterationCpuNanos;
+    private long iterationAccepted;
+
+    @Setup
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(INSTANCES));
+        TransactionRepository repository = new BucketedTransactionRepository();
+        TopTransactions top = new TopTransactions(0, INSTANCES);
+        CompletableFuture<Void> deployed = new CompletableFuture<>();
+        CompositeFuture.all(TransactionMonitor.deploy(vertx, HTTP_PORT, repository, new DimensionStatistics(), top,
+                                                      false, null, INSTANCES),
+                            TransactionMonitor.deployBinary(vertx, BINARY_PORT, repository, top, INSTANCES))
+                       .setHandler(result -> deployed.complete(null));
+        deployed.get(10, TimeUnit.SECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationCpuNanos = eventLoopCpuNanos();
+        iterationAccepted = RestApi.ACCEPTED.get();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        long accepted = RestApi.ACCEPTED.get() - iterationAccepted;
+        long cpuNanos = eventLoopCpuNanos() - iterationCpuNanos;
+        System.out.printf("%nEvent loop CPU per transaction: %d ns (%d transactions)%n",
+                          accepted == 0 ? 0 : cpuNanos / accepted, accepted);
+    }
+
+    private static long eventLoopCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuNanos = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("vert.x-eventloop-thread")) {
+                cpuNanos += Math.max(0, threads.getThreadCpuTime(thread.getId()));
+            }
+        }
+        return cpuNanos;
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+
+        private Socket socket;
+        private DataOutputStream output;
+        private DataInputStream input;
+        private int pendingAcks;
+        private URL singleUrl;
+        private URL batchUrl;
+
+        @Setup
+        public void setUp() throws IOException {
+            socket = new Socket("localhost", BINARY_PORT);
+            socket.setTcpNoDelay(true);
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            input = new DataInputStream(socket.getInputStream());
+            singleUrl = new URL("http://localhost:" + HTTP_PORT + "/transactions");
+            batchUrl = new URL("http://localhost:" + HTTP_PORT + "/transactions/batch");
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            while (pendingAcks > 0) {
+                input.readInt();
+                pendingAcks--;
+            }
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int binaryFrame(Producer producer) throws IOException {
+        long now = currentTimeMillis();
+        DataOutputStream output = producer.output;
+        output.writeInt(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            output.writeLong(now);
+            output.writeDouble(100.5);
+        }
+        output.flush();
+
+        if (++producer.pendingAcks < PIPELINED_FRAMES) {
+            return 0;
+        }
+        producer.pendingAcks--;
+        return producer.input.readInt();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int jsonBatch(Producer producer) throws IOException {
+        long now = currentTimeMillis();
+        StringBuilder body = new StringBuilder(BATCH_SIZE * 48).append('[');
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"amount\":100.5,\"timestamp\":").append(now).append('}');
+        }
+        return post(producer.batchUrl, body.append(']').toString().getBytes(US_ASCII));
+    }
+
+    @Benchmark
+    public int jsonSingle(Producer producer) throws IOException {
+        byte[] body = ("{\"amount\":100.5,\"timestamp\":" + currentTimeMillis() + "}").getBytes(US_ASCII);
+        return post(producer.singleUrl, body);
+    }
+
+    private static int post(URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+        int status = connection.getResponseCode();
+        try (InputStream input = connection.getInputStream()) {
+            while (input.read() != -1) {
+                // drains the response so the connection is reused
+            }
+        }
+        return status;
+    }
+}
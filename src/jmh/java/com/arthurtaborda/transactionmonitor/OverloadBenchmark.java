@@ -0,0 +1,146 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.QueuedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Load test of POST /transactions when the repository is slower than the clients: every transaction holds a
+ * lock for {@link #SERVICE_NANOS}, so the repository takes at most 2000 transactions per second.
+ * <p>
+ * Without a queue the event loops wait for the lock and the latency of every request grows with the number of
+ * clients. With a {@link QueuedTransactionRepository} the queue fills up, the requests it has no room for are
+ * answered with a 503 right away, and the latency stays bounded. The share of 503s is printed after every
+ * iteration.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class OverloadBenchmark {
+
+    private static final int PORT = 9194;
+    private static final int INSTANCES = 2;
+    private static final long SERVICE_NANOS = 500_000;
+
+    @Param({"direct", "queued"})
+    public String ingestion;
+
+    private Vertx vertx;
+    private TransactionRepository repository;
+    private URL url;
+    private long iterationAccepted;
+    private long iterationShed;
+
+    @Setup
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(INSTANCES));
+        repository = new SlowRepository();
+        if (ingestion.equals("queued")) {
+            repository = new QueuedTransactionRepository(repository, 4096, 0);
+        }
+        CompletableFuture<Void> deployed = new CompletableFuture<>();
+        TransactionMonitor.deploy(vertx, PORT, repository, INSTANCES)
+                          .setHandler(result -> deployed.complete(null));
+        deployed.get(10, TimeUnit.SECONDS);
+        url = new URL("http://localhost:" + PORT + "/transactions");
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        vertx.close();
+        if (repository instanceof QueuedTransactionRepository) {
+            ((QueuedTransactionRepository) repository).stop();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationAccepted = RestApi.ACCEPTED.get();
+        iterationShed = RestApi.SHED.get();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        long accepted = RestApi.ACCEPTED.get() - iterationAccepted;
+        long shed = RestApi.SHED.get() - iterationShed;
+        System.out.printf("%nAccepted: %d, shed: %d (%d%%)%n", accepted, shed,
+                          accepted + shed == 0 ? 0 : shed * 100 / (accepted + shed));
+    }
+
+    @Benchmark
+    public int postTransaction() throws IOException {
+        byte[] body = ("{\"amount\":100.5,\"timestamp\":" + currentTimeMillis() + "}").getBytes(US_ASCII);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+        int status = connection.getResponseCode();
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            while (input != null && input.read() != -1) {
+                // drains the response so the connection is reused
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Repository whose lock is held for {@link #SERVICE_NANOS} per transaction, like one with heavy contention
+     */
+    private static class SlowRepository extends BucketedTransactionRepository {
+
+        @Override
+        public synchronized boolean addTransaction(double amount, long timestamp) {
+            spin(1);
+            return super.addTransaction(amount, timestamp);
+        }
+
+        @Override
+        public synchronized int addTransactions(double[] amounts, long[] timestamps, int length) {
+            spin(length);
+            return super.addTransactions(amounts, timestamps, length);
+        }
+
+        private static void spin(int transactions) {
+            long end = System.nanoTime() + SERVICE_NANOS * transactions;
+            while (System.nanoTime() < end) {
+                // busy, like a thread holding the lock
+            }
+        }
+    }
+}
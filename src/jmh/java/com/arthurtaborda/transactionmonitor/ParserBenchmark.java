@@ -0,0 +1,46 @@
+package com.arthurtaborda.transactionmonitor;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a POST /transactions body, with the JsonObject used before and with {@link TransactionParser}.
+ * Run with <tt>-prof gc</tt> to compare the bytes allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+    private final Buffer body = Buffer.buffer("{\"amount\":1234.56,\"timestamp\":1506979417000}");
+    private final TransactionParser parser = new TransactionParser();
+
+    @Benchmark
+    public void jsonObject(Blackhole blackhole) {
+        JsonObject json = new JsonObject(body.toString());
+        blackhole.consume(json.getDouble("amount"));
+        blackhole.consume(json.getLong("timestamp"));
+    }
+
+    @Benchmark
+    public void transactionParser(Blackhole blackhole) {
+        blackhole.consume(parser.parse(body));
+        blackhole.consume(parser.getAmount());
+        blackhole.consume(parser.getTimestamp());
+    }
+}
@@ -0,0 +1,29 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.InMemTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.MaintenanceScheduler;
+import com.arthurtaborda.transactionmonitor.repository.SingleWriterTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+
+/**
+ * Creates and disposes of the repositories being benchmarked
+ */
+class Repositories {
+
+    private MaintenanceScheduler scheduler;
+
+    TransactionRepository create(String type) {
+        scheduler = new MaintenanceScheduler(false);
+        return TransactionMonitor.createRepository(type, scheduler, 0, null);
+    }
+
+    void close(TransactionRepository repository) throws InterruptedException {
+        if (repository instanceof InMemTransactionRepository) {
+            ((InMemTransactionRepository) repository).stop();
+        }
+        if (repository instanceof SingleWriterTransactionRepository) {
+            ((SingleWriterTransactionRepository) repository).stop();
+        }
+        scheduler.stop();
+    }
+}
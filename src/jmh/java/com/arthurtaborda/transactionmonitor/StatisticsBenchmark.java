@@ -0,0 +1,70 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Latency of {@link TransactionRepository#getStatistics()} with an empty window and with windows holding
+ * millions of transactions, spread over the last 50 seconds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StatisticsBenchmark {
+
+    @Param({"bucketed", "striped", "singlewriter", "inmem"})
+    public String repositoryType;
+
+    @Param({"0", "1000000", "5000000"})
+    public int windowSize;
+
+    private final Repositories repositories = new Repositories();
+    private TransactionRepository repository;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        repository = repositories.create(repositoryType);
+        long now = currentTimeMillis();
+        for (int i = 0; i < windowSize; i++) {
+            try {
+                repository.addTransaction(i % 1000, now - i % 50000);
+            } catch (RepositoryOverloadedException e) {
+                // the single writer fell behind, lets it catch up
+                Thread.yield();
+                i--;
+            }
+        }
+        // lets the in-memory repository generate its statistics from the filled window
+        TimeUnit.MILLISECONDS.sleep(1000);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        repositories.close(repository);
+    }
+
+    @Benchmark
+    public TransactionStatistics getStatistics() {
+        return repository.getStatistics();
+    }
+}
@@ -0,0 +1,107 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.metrics.Counter;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Checks the {@link AlertRule}s against the statistics of the repository once per tick, and publishes an alert
+ * on the event bus when a rule starts or stops being broken.
+ * <p>
+ * The statistics of every window used by a rule are read once per tick, so a tick takes the time of one
+ * statistics request per window and one comparison per rule, however many transactions there are. Alerts are
+ * JSON objects with the <tt>rule</tt>, its <tt>state</tt> (<tt>firing</tt> or <tt>resolved</tt>), the
+ * <tt>value</tt> of the statistic, what it was compared with and the <tt>timestamp</tt> of the tick.
+ */
+class AlertEngine {
+
+    static final String ALERTS_ADDRESS = "transaction-monitor.alerts";
+    static final long TICK_INTERVAL_MS = 1000;
+
+    private static final Logger LOGGER = getLogger(AlertEngine.class.getName());
+    private static final Counter FIRING = alerts("firing");
+    private static final Counter RESOLVED = alerts("resolved");
+
+    private final Vertx vertx;
+    private final TransactionRepository repository;
+    private final List<AlertRule> rules;
+    private final Map<Long, TransactionStatistics> windows;
+    private long timer;
+
+    /**
+     * @throws IllegalArgumentException if the repository does not keep the window of a rule
+     */
+    AlertEngine(Vertx vertx, TransactionRepository repository, List<AlertRule> rules) {
+        for (AlertRule rule : rules) {
+            try {
+                repository.getStatistics(rule.getWindowMillis());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Window is not supported: " + rule.getText(), e);
+            }
+        }
+        this.vertx = vertx;
+        this.repository = repository;
+        this.rules = rules;
+        this.windows = new HashMap<>();
+        this.timer = -1;
+    }
+
+    void start() {
+        timer = vertx.setPeriodic(TICK_INTERVAL_MS, tick -> tick(currentTimeMillis()));
+    }
+
+    void stop() {
+        if (timer != -1) {
+            vertx.cancelTimer(timer);
+            timer = -1;
+        }
+    }
+
+    /**
+     * Checks every rule and publishes the alerts of the rules that started or stopped being broken
+     *
+     * @return the alerts published
+     */
+    List<JsonObject> tick(long now) {
+        windows.clear();
+        List<JsonObject> alerts = new ArrayList<>(0);
+        for (AlertRule rule : rules) {
+            TransactionStatistics statistics = windows.computeIfAbsent(rule.getWindowMillis(),
+                                                                       repository::getStatistics);
+            double value = rule.value(statistics);
+            boolean firing = rule.check(value);
+            if (firing == rule.isFiring()) {
+                continue;
+            }
+            rule.setFiring(firing);
+
+            JsonObject alert = new JsonObject().put("rule", rule.getText())
+                                               .put("state", firing ? "firing" : "resolved")
+                                               .put("value", value);
+            rule.describe(alert);
+            alert.put("timestamp", now);
+            (firing ? FIRING : RESOLVED).increment();
+            LOGGER.info("Alert " + alert.encode());
+            vertx.eventBus().publish(ALERTS_ADDRESS, alert);
+            alerts.add(alert);
+        }
+        return alerts;
+    }
+
+    private static Counter alerts(String state) {
+        return Metrics.counter("alerts_total", "state=\"" + state + "\"",
+                               "Alerts published, by whether the rule started or stopped being broken");
+    }
+}
@@ -0,0 +1,223 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Condition on one statistic of a window of the repository, checked by the {@link AlertEngine} on every tick.
+ * Rules are written as:
+ * <ul>
+ * <li><tt>count(10s) &gt; 1000</tt>: the count, sum, avg, min or max of the transactions of the window is above
+ * (or below, with <tt>&lt;</tt>) a threshold</li>
+ * <li><tt>count(1s) deviates 3 sigma over 5m</tt>: the statistic is more than 3 standard deviations away from the
+ * mean of the values it had on the ticks of the last 5 minutes. The baseline is only used once it is complete, and
+ * a flat baseline, whose standard deviation is zero, never breaks the rule since there is no spread to measure the
+ * distance in.</li>
+ * </ul>
+ * Checking a deviation rule takes time proportional to the ticks of its baseline: the mean and standard deviation
+ * are computed again from its values on every check, so they do not drift like running sums would.
+ */
+abstract class AlertRule {
+
+    private static final String STATISTIC = "(count|sum|avg|min|max)\\((\\d{1,9}(?:ms|s|m|h))\\)";
+    private static final String NUMBER = "(-?\\d+(?:\\.\\d+)?)";
+    private static final Pattern THRESHOLD_PATTERN = Pattern.compile(STATISTIC + "\\s*([<>])\\s*" + NUMBER);
+    private static final Pattern DEVIATION_PATTERN = Pattern.compile(
+            STATISTIC + "\\s+deviates\\s+" + NUMBER + "\\s+sigma\\s+over\\s+(\\d{1,9}(?:ms|s|m|h))");
+
+    private final String text;
+    private final String statistic;
+    private final long windowMillis;
+    private boolean firing;
+
+    private AlertRule(String text, String statistic, long windowMillis) {
+        this.text = text;
+        this.statistic = statistic;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @param rules        rules separated by <tt>;</tt>
+     * @param tickInterval time between two checks of the rules, in milliseconds
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    static List<AlertRule> parseAll(String rules, long tickInterval) {
+        List<AlertRule> parsed = new ArrayList<>();
+        for (String rule : rules.split(";")) {
+            if (!rule.trim().isEmpty()) {
+                parsed.add(parse(rule, tickInterval));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * @param tickInterval time between two checks of the rule, in milliseconds
+     * @throws IllegalArgumentException if the rule is invalid
+     */
+    static AlertRule parse(String rule, long tickInterval) {
+        String text = rule.trim();
+        Matcher threshold = THRESHOLD_PATTERN.matcher(text);
+        if (threshold.matches()) {
+            return new Threshold(text, threshold.group(1), window(text, threshold.group(2)),
+                                 threshold.group(3).equals(">"), Double.parseDouble(threshold.group(4)));
+        }
+        Matcher deviation = DEVIATION_PATTERN.matcher(text);
+        if (deviation.matches()) {
+            long baselineMillis = window(text, deviation.group(4));
+            if (baselineMillis < 2 * tickInterval) {
+                throw new IllegalArgumentException("Baseline must span at least two ticks: " + text);
+            }
+            return new Deviation(text, deviation.group(1), window(text, deviation.group(2)),
+                                 Double.parseDouble(deviation.group(3)), (int) (baselineMillis / tickInterval));
+        }
+        throw new IllegalArgumentException("Rule is invalid: " + text);
+    }
+
+    private static long window(String text, String window) {
+        long millis = RestApi.parseWindow(window);
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Window is invalid: " + text);
+        }
+        return millis;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    boolean isFiring() {
+        return firing;
+    }
+
+    void setFiring(boolean firing) {
+        this.firing = firing;
+    }
+
+    double value(TransactionStatistics statistics) {
+        switch (statistic) {
+            case "count":
+                return statistics.getCount();
+            case "sum":
+                return statistics.getSum();
+            case "avg":
+                return statistics.getAverage();
+            case "min":
+                return statistics.getMin();
+            default:
+                return statistics.getMax();
+        }
+    }
+
+    /**
+     * Called once per tick
+     *
+     * @return <tt>true</tt> if the value breaks the rule
+     */
+    abstract boolean check(double value);
+
+    /**
+     * Adds what the value was compared with to the alert
+     */
+    abstract void describe(JsonObject alert);
+
+    private static class Threshold extends AlertRule {
+
+        private final boolean above;
+        private final double threshold;
+
+        private Threshold(String text, String statistic, long windowMillis, boolean above, double threshold) {
+            super(text, statistic, windowMillis);
+            this.above = above;
+            this.threshold = threshold;
+        }
+
+        @Override
+        boolean check(double value) {
+            return above ? value > threshold : value < threshold;
+        }
+
+        @Override
+        void describe(JsonObject alert) {
+            alert.put("threshold", threshold);
+        }
+    }
+
+    private static class Deviation extends AlertRule {
+
+        private final double sigmas;
+        private final double[] samples;
+        private int next;
+        private int size;
+        private double comparedMean;
+        private double comparedStandardDeviation;
+
+        private Deviation(String text, String statistic, long windowMillis, double sigmas, int baselineTicks) {
+            super(text, statistic, windowMillis);
+            this.sigmas = sigmas;
+            this.samples = new double[baselineTicks];
+        }
+
+        /**
+         * Compares the value with the baseline of the previous ticks, then adds it to the baseline in place of the
+         * oldest one
+         */
+        @Override
+        boolean check(double value) {
+            comparedMean = mean();
+            comparedStandardDeviation = standardDeviation(comparedMean);
+            boolean deviates = size == samples.length
+                               && comparedStandardDeviation > 0
+                               && Math.abs(value - comparedMean) > sigmas * comparedStandardDeviation;
+
+            if (size < samples.length) {
+                size++;
+            }
+            samples[next] = value;
+            next = (next + 1) % samples.length;
+            return deviates;
+        }
+
+        private double mean() {
+            if (size == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += samples[i];
+            }
+            return sum / size;
+        }
+
+        /**
+         * Sums the squared distances to the mean, which unlike the difference of the mean of the squares and the
+         * square of the mean does not cancel out when the values are large and close together
+         */
+        private double standardDeviation(double mean) {
+            if (size == 0) {
+                return 0;
+            }
+            double sumOfSquares = 0;
+            for (int i = 0; i < size; i++) {
+                double distance = samples[i] - mean;
+                sumOfSquares += distance * distance;
+            }
+            return Math.sqrt(sumOfSquares / size);
+        }
+
+        @Override
+        void describe(JsonObject alert) {
+            alert.put("mean", comparedMean);
+            alert.put("stddev", comparedStandardDeviation);
+        }
+    }
+}
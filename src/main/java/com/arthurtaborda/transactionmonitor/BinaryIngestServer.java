@@ -0,0 +1,164 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Receives transactions over TCP in fixed width binary frames, for producers sending too many for JSON over HTTP.
+ * <p>
+ * A frame is a big endian int with the number of transactions, from 1 to {@link #MAX_FRAME_TRANSACTIONS},
+ * followed by that many transactions of {@link #TRANSACTION_BYTES} bytes: the timestamp in milliseconds as a long
+ * and the amount as a double. Every frame is acknowledged with an int, the number of transactions accepted, in the
+ * order the frames arrived, so producers can keep sending frames without waiting for the acks.
+ * <p>
+ * A frame with an invalid number of transactions is acknowledged with <tt>-1</tt> and the connection is closed,
+ * since the following bytes can not be framed. Amounts that are not finite are counted as invalid. A frame the
+ * repository is too overloaded to take is acknowledged with <tt>-2</tt>, none of its transactions were added and
+ * it can be sent again later.
+ */
+class BinaryIngestServer extends AbstractVerticle {
+
+    static final int HEADER_BYTES = 4;
+    static final int TRANSACTION_BYTES = 16;
+    static final int MAX_FRAME_TRANSACTIONS = 4096;
+    static final int INVALID_FRAME = -1;
+    static final int OVERLOADED = -2;
+
+    private static final Logger LOGGER = getLogger(BinaryIngestServer.class.getName());
+
+    private final int port;
+    private final TransactionRepository transactionRepository;
+    private final TopTransactions topTransactions;
+    private NetServer server;
+
+    BinaryIngestServer(int port, TransactionRepository transactionRepository, TopTransactions topTransactions) {
+        this.port = port;
+        this.transactionRepository = transactionRepository;
+        this.topTransactions = topTransactions;
+    }
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        server = vertx.createNetServer(new NetServerOptions().setPort(port).setTcpNoDelay(true));
+        server.connectHandler(socket -> new Connection(socket))
+              .listen(result -> {
+                  if (result.succeeded()) {
+                      LOGGER.info("Binary server listening on port " + port);
+                      startFuture.complete();
+                  } else {
+                      startFuture.fail(result.cause());
+                  }
+              });
+    }
+
+    @Override
+    public void stop() throws Exception {
+        server.close();
+    }
+
+    /**
+     * Frames of one socket. The parser alternates between reading a header and reading the transactions it
+     * announced, and the transactions are decoded into arrays reused for every frame.
+     */
+    private class Connection implements Handler<Buffer> {
+
+        private final NetSocket socket;
+        private final RecordParser parser;
+        private final double[] amounts;
+        private final long[] timestamps;
+        private int frameTransactions;
+
+        Connection(NetSocket socket) {
+            this.socket = socket;
+            this.parser = RecordParser.newFixed(HEADER_BYTES, this);
+            this.amounts = new double[MAX_FRAME_TRANSACTIONS];
+            this.timestamps = new long[MAX_FRAME_TRANSACTIONS];
+            socket.handler(parser);
+        }
+
+        @Override
+        public void handle(Buffer record) {
+            if (frameTransactions == 0) {
+                readHeader(record);
+            } else {
+                readTransactions(record);
+            }
+        }
+
+        private void readHeader(Buffer header) {
+            int transactions = header.getInt(0);
+            if (transactions < 1 || transactions > MAX_FRAME_TRANSACTIONS) {
+                socket.write(ack(INVALID_FRAME));
+                socket.close();
+                return;
+            }
+            frameTransactions = transactions;
+            parser.fixedSizeMode(transactions * TRANSACTION_BYTES);
+        }
+
+        private void readTransactions(Buffer frame) {
+            int size = 0;
+            int invalid = 0;
+            for (int position = 0; position < frame.length(); position += TRANSACTION_BYTES) {
+                long timestamp = frame.getLong(position);
+                double amount = frame.getDouble(position + 8);
+                if (Double.isFinite(amount)) {
+                    timestamps[size] = timestamp;
+                    amounts[size] = amount;
+                    size++;
+                } else {
+                    invalid++;
+                }
+            }
+
+            RestApi.INVALID.add(invalid);
+            socket.write(ack(add(size)));
+            if (socket.writeQueueFull()) {
+                // stops reading frames until the producer reads its acks
+                socket.pause();
+                socket.drainHandler(drained -> socket.resume());
+            }
+
+            frameTransactions = 0;
+            parser.fixedSizeMode(HEADER_BYTES);
+        }
+
+        /**
+         * @return the number of transactions accepted, or {@link #OVERLOADED}
+         */
+        private int add(int size) {
+            long start = System.nanoTime();
+            int accepted;
+            try {
+                accepted = transactionRepository.addTransactions(amounts, timestamps, size);
+            } catch (RepositoryOverloadedException e) {
+                RestApi.SHED.add(size);
+                return OVERLOADED;
+            } finally {
+                TransactionBatch.ADD_LATENCY.recordSince(start);
+            }
+            for (int i = 0; i < size; i++) {
+                topTransactions.add(amounts[i], timestamps[i], null);
+            }
+            RestApi.ACCEPTED.add(accepted);
+            RestApi.REJECTED.add(size - accepted);
+            return accepted;
+        }
+
+        private Buffer ack(int accepted) {
+            return Buffer.buffer(4).appendInt(accepted);
+        }
+    }
+}
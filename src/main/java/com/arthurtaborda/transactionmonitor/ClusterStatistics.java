@@ -0,0 +1,216 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Statistics of every node of a cluster, where each node only keeps the transactions it received.
+ * <p>
+ * Nodes find each other with heartbeats published on the event bus. The node asked for the statistics publishes
+ * a request, every other node replies with the exact count, sum, min and max of its own window, and those are
+ * merged with the local ones, so the cluster statistics are exact however the transactions were spread.
+ * Percentiles can not be merged, see {@link TransactionStatistics#merge(TransactionStatistics)}.
+ * <p>
+ * Nodes share an event bus when Vert.x is clustered, or when they run in the same Vert.x instance.
+ */
+class ClusterStatistics {
+
+    static final String HEARTBEAT_ADDRESS = "transaction-monitor.heartbeat";
+    static final String STATISTICS_ADDRESS = "transaction-monitor.statistics";
+
+    private static final Logger LOGGER = getLogger(ClusterStatistics.class.getName());
+
+    private static final long HEARTBEAT_INTERVAL_MS = 1000;
+    private static final long PEER_TIMEOUT_MS = 3 * HEARTBEAT_INTERVAL_MS;
+    private static final long REPLY_TIMEOUT_MS = 1000;
+
+    private final Vertx vertx;
+    private final TransactionRepository repository;
+    private final String nodeId;
+    private final Map<String, Long> peers;
+    private final AtomicLong requests;
+
+    private MessageConsumer<JsonObject> heartbeatConsumer;
+    private MessageConsumer<JsonObject> requestConsumer;
+    private long timer;
+
+    ClusterStatistics(Vertx vertx, TransactionRepository repository) {
+        this.vertx = vertx;
+        this.repository = repository;
+        this.nodeId = UUID.randomUUID().toString();
+        this.peers = new ConcurrentHashMap<>();
+        this.requests = new AtomicLong();
+    }
+
+    void start() {
+        EventBus eventBus = vertx.eventBus();
+        heartbeatConsumer = eventBus.consumer(HEARTBEAT_ADDRESS, this::heartbeat);
+        requestConsumer = eventBus.consumer(STATISTICS_ADDRESS, this::reply);
+        heartbeatConsumer.completionHandler(registered -> publishHeartbeat(false));
+        timer = vertx.setPeriodic(HEARTBEAT_INTERVAL_MS, tick -> publishHeartbeat(false));
+    }
+
+    /**
+     * Stops answering requests and tells the other nodes this one is leaving
+     */
+    void stop() {
+        vertx.cancelTimer(timer);
+        heartbeatConsumer.unregister();
+        requestConsumer.unregister();
+        publishHeartbeat(true);
+    }
+
+    /**
+     * @return number of other nodes that sent a heartbeat recently
+     */
+    int getPeerCount() {
+        long now = currentTimeMillis();
+        peers.values().removeIf(lastHeartbeat -> now - lastHeartbeat >= PEER_TIMEOUT_MS);
+        return peers.size();
+    }
+
+    private void publishHeartbeat(boolean leaving) {
+        vertx.eventBus().publish(HEARTBEAT_ADDRESS, new JsonObject().put("node", nodeId).put("leaving", leaving));
+    }
+
+    private void heartbeat(Message<JsonObject> message) {
+        String node = message.body().getString("node");
+        if (nodeId.equals(node)) {
+            return;
+        }
+        if (message.body().getBoolean("leaving")) {
+            peers.remove(node);
+        } else if (peers.put(node, currentTimeMillis()) == null) {
+            // a new node would otherwise only learn about this one on the next heartbeat
+            publishHeartbeat(false);
+        }
+    }
+
+    private void reply(Message<JsonObject> message) {
+        JsonObject request = message.body();
+        if (nodeId.equals(request.getString("node"))) {
+            return;
+        }
+
+        JsonObject reply = new JsonObject().put("node", nodeId);
+        try {
+            reply.put("statistics", encode(repository.getStatistics(request.getLong("window"))));
+        } catch (IllegalArgumentException e) {
+            reply.put("error", e.getMessage());
+        }
+        vertx.eventBus().send(request.getString("replyTo"), reply);
+    }
+
+    /**
+     * Merges the statistics of the window from this node and its peers. Peers that do not reply within
+     * {@link #REPLY_TIMEOUT_MS} are left out. Must be called on a Vert.x context, the replies are gathered and the
+     * handler is called on it.
+     *
+     * @throws IllegalArgumentException if the window is not supported by the repository
+     */
+    void getStatistics(long windowMillis, MergedStatisticsHandler handler) {
+        TransactionStatistics local = repository.getStatistics(windowMillis);
+        int peerCount = getPeerCount();
+        if (peerCount == 0) {
+            handler.handle(local, 1);
+            return;
+        }
+
+        EventBus eventBus = vertx.eventBus();
+        String replyTo = STATISTICS_ADDRESS + "." + nodeId + "." + requests.incrementAndGet();
+        Gathering gathering = new Gathering(local, peerCount, handler);
+        gathering.consumer = eventBus.consumer(replyTo, gathering::reply);
+        gathering.timer = vertx.setTimer(REPLY_TIMEOUT_MS, timeout -> gathering.complete());
+        // on a clustered event bus the reply address must be known by the peers before they reply
+        gathering.consumer.completionHandler(registered -> eventBus.publish(
+                STATISTICS_ADDRESS, new JsonObject().put("node", nodeId)
+                                                    .put("replyTo", replyTo)
+                                                    .put("window", windowMillis)));
+    }
+
+    /**
+     * Only the exact values are sent, the rounded ones are computed again after merging
+     */
+    private static JsonObject encode(TransactionStatistics statistics) {
+        return new JsonObject().put("count", statistics.getCount())
+                               .put("sum", statistics.getExactSum())
+                               .put("min", statistics.getExactMin())
+                               .put("max", statistics.getExactMax());
+    }
+
+    private static TransactionStatistics decode(JsonObject json) {
+        return new TransactionStatistics(json.getLong("count"), json.getDouble("sum"),
+                                         json.getDouble("min"), json.getDouble("max"));
+    }
+
+    @FunctionalInterface
+    interface MergedStatisticsHandler {
+
+        /**
+         * @param nodes number of nodes whose statistics were merged, including this one
+         */
+        void handle(TransactionStatistics statistics, int nodes);
+    }
+
+    /**
+     * Replies to one request, only used from the context of the caller
+     */
+    private class Gathering {
+
+        private final MergedStatisticsHandler handler;
+        private TransactionStatistics statistics;
+        private int remaining;
+        private int nodes;
+        private boolean completed;
+        private MessageConsumer<JsonObject> consumer;
+        private long timer;
+
+        Gathering(TransactionStatistics local, int peerCount, MergedStatisticsHandler handler) {
+            this.handler = handler;
+            this.statistics = local;
+            this.remaining = peerCount;
+            this.nodes = 1;
+        }
+
+        void reply(Message<JsonObject> message) {
+            JsonObject reply = message.body();
+            String error = reply.getString("error");
+            if (error == null) {
+                statistics = statistics.merge(decode(reply.getJsonObject("statistics")));
+                nodes++;
+            } else {
+                LOGGER.warn("Node " + reply.getString("node") + " could not get its statistics: " + error);
+            }
+            if (--remaining == 0) {
+                complete();
+            }
+        }
+
+        void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            vertx.cancelTimer(timer);
+            consumer.unregister();
+            if (remaining > 0) {
+                LOGGER.warn(remaining + " nodes did not reply in " + REPLY_TIMEOUT_MS + "ms");
+            }
+            handler.handle(statistics, nodes);
+        }
+    }
+}
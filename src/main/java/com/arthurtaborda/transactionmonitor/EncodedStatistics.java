@@ -0,0 +1,56 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * JSON body of a statistics snapshot, encoded once and reused for as long as the repository reports the same
+ * version. The ETag combines the version with a token picked at startup, so tags from a previous run never match.
+ */
+class EncodedStatistics {
+
+    private static final String ETAG_PREFIX = "\"" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + "-";
+
+    private final long version;
+    private final Buffer body;
+    private final String etag;
+
+    private EncodedStatistics(long version, Buffer body, String etag) {
+        this.version = version;
+        this.body = body;
+        this.etag = etag;
+    }
+
+    /**
+     * @param previous the last encoded snapshot, or <tt>null</tt>
+     * @return <tt>previous</tt> if it has the same version as the statistics, otherwise the encoded statistics
+     */
+    static EncodedStatistics encode(TransactionStatistics statistics, EncodedStatistics previous) {
+        long version = statistics.getVersion();
+        if (previous != null && version != 0 && previous.version == version) {
+            return previous;
+        }
+        Buffer body = Buffer.buffer(RestApi.toJson(statistics).toString());
+        return new EncodedStatistics(version, body, version == 0 ? null : ETAG_PREFIX + version + "\"");
+    }
+
+    Buffer getBody() {
+        return body;
+    }
+
+    /**
+     * @return <tt>null</tt> if the statistics are not versioned
+     */
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @param ifNoneMatch value of the If-None-Match header, can be <tt>null</tt>
+     */
+    boolean matches(String ifNoneMatch) {
+        return etag != null && ifNoneMatch != null && ifNoneMatch.contains(etag);
+    }
+}
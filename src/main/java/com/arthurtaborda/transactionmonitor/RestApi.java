@@ -1,55 +1,125 @@
 package com.arthurtaborda.transactionmonitor;
 
+import com.arthurtaborda.transactionmonitor.metrics.Counter;
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import com.arthurtaborda.transactionmonitor.repository.Dimension;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.HeavyHitter;
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
 import com.arthurtaborda.transactionmonitor.repository.Transaction;
 import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
 import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.handler.BodyHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class RestApi extends AbstractVerticle {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RestApi.class.getName());
 
+    private static final Pattern WINDOW_PATTERN = Pattern.compile("(\\d{1,9})(ms|s|m|h)");
+
+    static final Counter ACCEPTED = transactions("accepted");
+    static final Counter REJECTED = transactions("rejected");
+    static final Counter INVALID = transactions("invalid");
+    static final Counter SHED = transactions("shed");
+    private static final Latency ADD_LATENCY = Metrics.latency("repository_add_seconds", "",
+                                                                "Time spent adding a transaction to the repository");
+    private static final Latency STATISTICS_LATENCY = Metrics.latency("repository_statistics_seconds", "",
+                                                                       "Time spent getting the statistics from the repository");
+
     private HttpServer server;
+    private StatisticsStream statisticsStream;
+    private volatile EncodedStatistics encodedStatistics;
     private int port;
     private final TransactionRepository transactionRepository;
+    private final DimensionStatistics dimensionStatistics;
+    private final TopTransactions topTransactions;
+    private final ClusterStatistics clusterStatistics;
+    private final Executor handlerExecutor;
+    private final TransactionParser transactionParser;
 
     public RestApi(int port, TransactionRepository transactionRepository) {
+        this(port, transactionRepository, new DimensionStatistics(), new TopTransactions());
+    }
+
+    public RestApi(int port, TransactionRepository transactionRepository, DimensionStatistics dimensionStatistics,
+                   TopTransactions topTransactions) {
+        this(port, transactionRepository, dimensionStatistics, topTransactions, null);
+    }
+
+    /**
+     * @param clusterStatistics statistics of the cluster the node is part of, or <tt>null</tt> if it is alone
+     */
+    RestApi(int port, TransactionRepository transactionRepository, DimensionStatistics dimensionStatistics,
+            TopTransactions topTransactions, ClusterStatistics clusterStatistics) {
+        this(port, transactionRepository, dimensionStatistics, topTransactions, clusterStatistics, null);
+    }
+
+    /**
+     * @param handlerExecutor threads handling single transactions and statistics requests once they are read, or
+     *                        <tt>null</tt> to handle them on the event loop
+     */
+    RestApi(int port, TransactionRepository transactionRepository, DimensionStatistics dimensionStatistics,
+            TopTransactions topTransactions, ClusterStatistics clusterStatistics, Executor handlerExecutor) {
         this.port = port;
         this.transactionRepository = transactionRepository;
+        this.dimensionStatistics = dimensionStatistics;
+        this.topTransactions = topTransactions;
+        this.clusterStatistics = clusterStatistics;
+        this.handlerExecutor = handlerExecutor;
+        this.transactionParser = new TransactionParser();
     }
 
     @Override
-    public void start() throws Exception {
+    public void start(Future<Void> startFuture) throws Exception {
         HttpServerOptions serverOptions = new HttpServerOptions().setPort(port);
 
         server = vertx.createHttpServer(serverOptions);
+        statisticsStream = new StatisticsStream(vertx, transactionRepository);
         Router router = Router.router(vertx);
-        router.route()
-              .handler(BodyHandler.create());
 
         transactionEndpoint(router);
+        transactionBatchEndpoint(router);
         statisticsEndpoint(router);
+        statisticsStreamEndpoint(router);
+        alertStreamEndpoint(router);
+        topStatisticsEndpoint(router);
+        metricsEndpoint(router);
 
         server.requestHandler(router::accept)
               .listen(result -> {
                   if (result.succeeded()) {
                       LOGGER.info("Http server listening on port " + port);
+                      startFuture.complete();
+                  } else {
+                      startFuture.fail(result.cause());
                   }
               });
     }
 
     @Override
     public void stop() throws Exception {
+        statisticsStream.stop();
         server.close();
     }
 
@@ -57,69 +127,342 @@ public class RestApi extends AbstractVerticle {
         router.post("/transactions")
               .consumes("application/json")
               .handler(ctx -> {
-                  HttpServerResponse response = ctx.response();
-                  Transaction transaction = getTransactionFromRequest(ctx, response);
-                  if (transaction == null) {
+                  HttpServerRequest request = ctx.request();
+                  RequestBody body = new RequestBody();
+                  request.handler(body);
+                  request.endHandler(end -> {
+                      if (body.isTooLarge()) {
+                          INVALID.increment();
+                          ctx.response().setStatusCode(413).end(TransactionParser.Result.TOO_LARGE.getMessage());
+                          return;
+                      }
+                      dispatch(ctx, c -> addTransaction(body.get(), c.response()));
+                  });
+              });
+    }
+
+    /**
+     * Handles the request on the handler threads, or right away if it is handled on the event loop
+     */
+    private void dispatch(RoutingContext ctx, Handler<RoutingContext> handler) {
+        if (handlerExecutor == null) {
+            handler.handle(ctx);
+            return;
+        }
+        handlerExecutor.execute(() -> {
+            try {
+                handler.handle(ctx);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not handle " + ctx.request().path(), e);
+                ctx.response().setStatusCode(500).end();
+            }
+        });
+    }
+
+    private Handler<RoutingContext> dispatched(Handler<RoutingContext> handler) {
+        return ctx -> dispatch(ctx, handler);
+    }
+
+    private void addTransaction(Buffer body, HttpServerResponse response) {
+        // the parser keeps the last transaction, it is only shared by requests handled on the event loop
+        TransactionParser transactionParser = handlerExecutor == null ? this.transactionParser
+                                                                      : new TransactionParser();
+        TransactionParser.Result result = transactionParser.parse(body);
+        if (result != TransactionParser.Result.VALID) {
+            INVALID.increment();
+            response.setStatusCode(400).end(result.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean added;
+        try {
+            added = transactionRepository.addTransaction(transactionParser.getAmount(),
+                                                         transactionParser.getTimestamp());
+        } catch (RepositoryOverloadedException e) {
+            SHED.increment();
+            response.setStatusCode(503)
+                    .putHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds(e.getRetryAfterMillis()))
+                    .end(e.getMessage());
+            return;
+        } finally {
+            ADD_LATENCY.recordSince(start);
+        }
+
+        if (added) {
+            ACCEPTED.increment();
+            transactionParser.addToDimensions(dimensionStatistics);
+            topTransactions.add(transactionParser.getAmount(), transactionParser.getTimestamp(), transactionParser);
+            response.setStatusCode(201);
+        } else {
+            REJECTED.increment();
+            response.setStatusCode(204);
+        }
+
+        response.end();
+    }
+
+    private void transactionBatchEndpoint(Router router) {
+        router.post("/transactions/batch")
+              .consumes("application/json")
+              .consumes("application/x-ndjson")
+              .handler(ctx -> {
+                  HttpServerRequest request = ctx.request();
+                  String contentType = request.getHeader(HttpHeaders.CONTENT_TYPE);
+                  boolean ndjson = contentType.startsWith("application/x-ndjson");
+
+                  TransactionBatch batch = new TransactionBatch(transactionRepository, dimensionStatistics,
+                                                                topTransactions, transactionParser, ndjson);
+                  request.handler(batch);
+                  request.endHandler(end -> {
+                      boolean complete = batch.end();
+                      ACCEPTED.add(batch.getAccepted());
+                      REJECTED.add(batch.getRejected());
+                      INVALID.add(batch.getInvalid());
+                      SHED.add(batch.getShed());
+
+                      JsonObject json = new JsonObject();
+                      json.put("accepted", batch.getAccepted());
+                      json.put("rejected", batch.getRejected());
+                      json.put("invalid", batch.getInvalid());
+                      json.put("shed", batch.getShed());
+
+                      HttpServerResponse response = ctx.response();
+                      if (batch.getShed() > 0) {
+                          response.setStatusCode(503)
+                                  .putHeader(HttpHeaders.RETRY_AFTER,
+                                             retryAfterSeconds(batch.getRetryAfterMillis()));
+                      } else {
+                          response.setStatusCode(complete ? 200 : 400);
+                      }
+                      response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8")
+                              .end(json.toString());
+                  });
+              });
+    }
+
+    private void statisticsEndpoint(Router router) {
+        router.get("/statistics")
+              .produces("application/json")
+              .handler(dispatched(ctx -> {
+                  String window = ctx.request().getParam("window");
+                  String from = ctx.request().getParam("from");
+                  String to = ctx.request().getParam("to");
+                  if (from != null || to != null) {
+                      respondWithArchivedStatistics(ctx, from, to, window);
+                      return;
+                  }
+                  Dimension dimension = null;
+                  for (Dimension candidate : Dimension.values()) {
+                      if (ctx.request().getParam(candidate.getField()) != null) {
+                          if (dimension != null) {
+                              ctx.response().setStatusCode(400).end("Only one dimension can be queried");
+                              return;
+                          }
+                          dimension = candidate;
+                      }
+                  }
+                  if (dimension != null) {
+                      respondWithDimensionStatistics(ctx, dimension, window);
+                      return;
+                  }
+                  boolean cluster = clusterStatistics != null && !"node".equals(ctx.request().getParam("scope"));
+                  if (window == null && !cluster) {
+                      respondWithCachedStatistics(ctx);
                       return;
                   }
 
-                  boolean added = transactionRepository.addTransaction(transaction);
-
-                  if (added) {
-                      response.setStatusCode(201);
-                  } else {
-                      response.setStatusCode(204);
+                  long windowMillis = window == null ? Transaction.WINDOW_MS : parseWindow(window);
+                  if (windowMillis <= 0) {
+                      ctx.response().setStatusCode(400).end("Window is invalid");
+                      return;
+                  }
+                  if (cluster) {
+                      respondWithClusterStatistics(ctx, windowMillis);
+                      return;
+                  }
+                  TransactionStatistics statistics;
+                  try {
+                      long start = System.nanoTime();
+                      statistics = transactionRepository.getStatistics(windowMillis);
+                      STATISTICS_LATENCY.recordSince(start);
+                  } catch (IllegalArgumentException e) {
+                      ctx.response().setStatusCode(400).end("Window is not supported");
+                      return;
                   }
 
-                  response.end();
-              });
+                  ctx.response()
+                     .setStatusCode(200)
+                     .putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8")
+                     .end(toJson(statistics).toString());
+              }));
     }
 
-    private static Transaction getTransactionFromRequest(RoutingContext ctx, HttpServerResponse response) {
-        JsonObject request = null;
-        try {
-            request = ctx.getBodyAsJson();
-        } catch (Exception e) {
-            response.setStatusCode(400).end("Json is invalid");
-            return null;
+    /**
+     * The replies of the peers are gathered on the context of the verticle, handler threads do not have one
+     */
+    private void respondWithClusterStatistics(RoutingContext ctx, long windowMillis) {
+        if (handlerExecutor == null) {
+            gatherClusterStatistics(ctx, windowMillis);
+        } else {
+            context.runOnContext(v -> gatherClusterStatistics(ctx, windowMillis));
         }
-        Double amount = null;
+    }
+
+    private void gatherClusterStatistics(RoutingContext ctx, long windowMillis) {
         try {
-            amount = request.getDouble("amount");
-            if (amount == null) {
-                response.setStatusCode(400).end("Amount is required");
-                return null;
-            }
-        } catch (Exception e) {
-            response.setStatusCode(400).end("Amount is invalid");
-            return null;
+            clusterStatistics.getStatistics(windowMillis, (statistics, nodes) -> ctx.response()
+                    .setStatusCode(200)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8")
+                    .end(toJson(statistics).put("nodes", nodes).toString()));
+        } catch (IllegalArgumentException e) {
+            ctx.response().setStatusCode(400).end("Window is not supported");
         }
-        Long timestamp = null;
+    }
+
+    /**
+     * Ranges are read from the archive of this node on a worker thread, since the blocks may not be cached
+     *
+     * @param from start of the range in milliseconds since the epoch, inclusive
+     * @param to   end of the range in milliseconds since the epoch, exclusive
+     */
+    private void respondWithArchivedStatistics(RoutingContext ctx, String from, String to, String window) {
+        long fromMillis;
+        long toMillis;
         try {
-            timestamp = request.getLong("timestamp");
-            if (timestamp == null) {
-                response.setStatusCode(400).end("Timestamp is required");
-                return null;
-            }
-        } catch (Exception e) {
-            response.setStatusCode(400).end("Timestamp is invalid");
-            return null;
+            fromMillis = Long.parseLong(from);
+            toMillis = Long.parseLong(to);
+        } catch (NumberFormatException e) {
+            fromMillis = 0;
+            toMillis = 0;
         }
-        return new Transaction(amount, timestamp);
+        if (window != null || fromMillis >= toMillis) {
+            ctx.response().setStatusCode(400).end("Range is invalid");
+            return;
+        }
+
+        long rangeFrom = fromMillis;
+        long rangeTo = toMillis;
+        vertx.<TransactionStatistics>executeBlocking(
+                future -> future.complete(transactionRepository.getStatistics(rangeFrom, rangeTo)), false,
+                result -> {
+                    if (result.failed() && result.cause() instanceof IllegalArgumentException) {
+                        ctx.response().setStatusCode(400).end("Range is not supported");
+                        return;
+                    }
+                    if (result.failed()) {
+                        LOGGER.error("Could not read the statistics archive", result.cause());
+                        ctx.response().setStatusCode(500).end();
+                        return;
+                    }
+                    ctx.response()
+                       .setStatusCode(200)
+                       .putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8")
+                       .end(toJson(result.result()).toString());
+                });
     }
 
-    private void statisticsEndpoint(Router router) {
-        router.get("/statistics")
+    /**
+     * Dimension statistics are only kept for the last 60 seconds, and only for the transactions of this node
+     */
+    private void respondWithDimensionStatistics(RoutingContext ctx, Dimension dimension, String window) {
+        if (window != null && parseWindow(window) != Transaction.WINDOW_MS) {
+            ctx.response().setStatusCode(400).end("Window is not supported");
+            return;
+        }
+
+        long key = DimensionStatistics.key(ctx.request().getParam(dimension.getField()));
+        TransactionStatistics statistics = dimensionStatistics.getStatistics(dimension, key);
+
+        ctx.response()
+           .setStatusCode(200)
+           .putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8")
+           .end(toJson(statistics).toString());
+    }
+
+    /**
+     * Writes the body encoded for the current version of the statistics, or a 304 if the client already has it
+     */
+    private void respondWithCachedStatistics(RoutingContext ctx) {
+        long start = System.nanoTime();
+        TransactionStatistics statistics = transactionRepository.getStatistics();
+        STATISTICS_LATENCY.recordSince(start);
+        encodedStatistics = EncodedStatistics.encode(statistics, encodedStatistics);
+
+        HttpServerResponse response = ctx.response();
+        if (encodedStatistics.getEtag() != null) {
+            response.putHeader(HttpHeaders.ETAG, encodedStatistics.getEtag());
+        }
+        if (encodedStatistics.matches(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatusCode(304).end();
+            return;
+        }
+
+        response.setStatusCode(200)
+                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8")
+                .end(encodedStatistics.getBody());
+    }
+
+    private void statisticsStreamEndpoint(Router router) {
+        router.get("/statistics/stream")
+              .handler(ctx -> statisticsStream.subscribe(ctx.response()));
+    }
+
+    /**
+     * Pushes the alerts published on the event bus as server-sent events, a subscriber whose connection can not
+     * keep up misses alerts instead of queueing them
+     */
+    private void alertStreamEndpoint(Router router) {
+        router.get("/alerts/stream")
+              .handler(ctx -> {
+                  HttpServerResponse response = ctx.response();
+                  response.setChunked(true)
+                          .putHeader(HttpHeaders.CONTENT_TYPE, "text/event-stream; charset=utf-8")
+                          .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache")
+                          // a comment, so the headers are sent before the first alert
+                          .write(":\n\n");
+                  MessageConsumer<JsonObject> consumer = vertx.eventBus().consumer(AlertEngine.ALERTS_ADDRESS);
+                  consumer.handler(alert -> {
+                      if (!response.writeQueueFull()) {
+                          response.write("data: " + alert.body().encode() + "\n\n");
+                      }
+                  });
+                  response.closeHandler(closed -> consumer.unregister());
+              });
+    }
+
+    private void topStatisticsEndpoint(Router router) {
+        router.get("/statistics/top")
               .produces("application/json")
               .handler(ctx -> {
-                  TransactionStatistics statistics = transactionRepository.getStatistics();
+                  String k = ctx.request().getParam("k");
+                  int top;
+                  try {
+                      top = k == null ? 10 : Integer.parseInt(k);
+                  } catch (NumberFormatException e) {
+                      top = -1;
+                  }
+                  if (top < 1 || top > TopTransactions.MAX_K) {
+                      ctx.response().setStatusCode(400).end("K must be between 1 and " + TopTransactions.MAX_K);
+                      return;
+                  }
 
                   JsonObject json = new JsonObject();
-                  json.put("sum", statistics.getSum());
-                  json.put("avg", statistics.getAverage());
-                  json.put("max", statistics.getMax());
-                  json.put("min", statistics.getMin());
-                  json.put("count", statistics.getCount());
+                  JsonArray largest = new JsonArray();
+                  for (Transaction transaction : topTransactions.getLargest(top)) {
+                      largest.add(new JsonObject().put("amount", transaction.getAmount())
+                                                  .put("timestamp", transaction.getTimestamp()));
+                  }
+                  json.put("largest", largest);
+                  for (Dimension dimension : Dimension.values()) {
+                      JsonArray hitters = new JsonArray();
+                      for (HeavyHitter hitter : topTransactions.getMostFrequent(dimension, top)) {
+                          hitters.add(new JsonObject().put("value", hitter.getValue())
+                                                      .put("count", hitter.getCount())
+                                                      .put("error", hitter.getError()));
+                      }
+                      json.put(dimension.getField(), hitters);
+                  }
 
                   ctx.response()
                      .setStatusCode(200)
@@ -127,4 +470,100 @@ public class RestApi extends AbstractVerticle {
                      .end(json.toString());
               });
     }
+
+    private void metricsEndpoint(Router router) {
+        router.get("/metrics")
+              .handler(ctx -> ctx.response()
+                                 .setStatusCode(200)
+                                 .putHeader(HttpHeaders.CONTENT_TYPE, "text/plain; version=0.0.4")
+                                 .end(Metrics.scrape()));
+    }
+
+    /**
+     * @return the value of a Retry-After header, in whole seconds and at least 1
+     */
+    static String retryAfterSeconds(long retryAfterMillis) {
+        return String.valueOf(Math.max(1, (retryAfterMillis + 999) / 1000));
+    }
+
+    private static Counter transactions(String result) {
+        return Metrics.counter("transactions_total", "result=\"" + result + "\"",
+                               "Transactions received, by whether they were accepted, rejected for being too old or invalid");
+    }
+
+    static JsonObject toJson(TransactionStatistics statistics) {
+        JsonObject json = new JsonObject();
+        json.put("sum", statistics.getSum());
+        json.put("avg", statistics.getAverage());
+        json.put("max", statistics.getMax());
+        json.put("min", statistics.getMin());
+        json.put("count", statistics.getCount());
+        json.put("p50", statistics.getP50());
+        json.put("p90", statistics.getP90());
+        json.put("p95", statistics.getP95());
+        json.put("p99", statistics.getP99());
+        return json;
+    }
+
+    /**
+     * @param window a number followed by <tt>ms</tt>, <tt>s</tt>, <tt>m</tt> or <tt>h</tt>, e.g. <tt>5m</tt>
+     * @return the window in milliseconds, or <tt>-1</tt> if it is invalid
+     */
+    static long parseWindow(String window) {
+        Matcher matcher = WINDOW_PATTERN.matcher(window);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        long value = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "h":
+                return value * 3600000;
+            case "m":
+                return value * 60000;
+            case "s":
+                return value * 1000;
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Collects the chunks of a request body. A body that arrives in one chunk is used as it is, without copying.
+     * Bodies larger than {@link TransactionParser#MAX_LENGTH} are not kept, the rest of their chunks are dropped.
+     */
+    private static class RequestBody implements Handler<Buffer> {
+
+        private Buffer body;
+        private boolean copied;
+        private boolean tooLarge;
+
+        @Override
+        public void handle(Buffer chunk) {
+            if (tooLarge) {
+                return;
+            }
+            if ((body == null ? 0 : body.length()) + chunk.length() > TransactionParser.MAX_LENGTH) {
+                tooLarge = true;
+                body = null;
+                return;
+            }
+            if (body == null) {
+                body = chunk;
+            } else {
+                if (!copied) {
+                    body = Buffer.buffer(body.length() + chunk.length()).appendBuffer(body);
+                    copied = true;
+                }
+                body.appendBuffer(chunk);
+            }
+        }
+
+        private Buffer get() {
+            return body == null ? Buffer.buffer(0) : body;
+        }
+
+        private boolean isTooLarge() {
+            return tooLarge;
+        }
+    }
 }
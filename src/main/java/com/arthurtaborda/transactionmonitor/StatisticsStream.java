@@ -0,0 +1,85 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pushes the statistics to every subscribed response as server-sent events.
+ * <p>
+ * The statistics are read once per tick and only serialized when their version changed, and the same buffer is
+ * written to all subscribers, however many there are. A subscriber whose connection can not keep up skips ticks instead of queueing them.
+ * The timer only runs while there are subscribers.
+ * <p>
+ * Subscribers must be added from the event loop the stream was created on.
+ */
+class StatisticsStream {
+
+    static final long TICK_INTERVAL_MS = 1000;
+
+    private final Vertx vertx;
+    private final TransactionRepository transactionRepository;
+    private final List<HttpServerResponse> subscribers;
+    private long timer;
+    private EncodedStatistics encodedStatistics;
+    private Buffer event;
+
+    StatisticsStream(Vertx vertx, TransactionRepository transactionRepository) {
+        this.vertx = vertx;
+        this.transactionRepository = transactionRepository;
+        this.subscribers = new ArrayList<>();
+        this.timer = -1;
+    }
+
+    void subscribe(HttpServerResponse response) {
+        response.setChunked(true)
+                .putHeader(HttpHeaders.CONTENT_TYPE, "text/event-stream; charset=utf-8")
+                .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .write(event());
+        response.closeHandler(closed -> subscribers.remove(response));
+        subscribers.add(response);
+
+        if (timer == -1) {
+            timer = vertx.setPeriodic(TICK_INTERVAL_MS, tick -> tick());
+        }
+    }
+
+    private void tick() {
+        if (subscribers.isEmpty()) {
+            stop();
+            return;
+        }
+
+        Buffer event = event();
+        for (HttpServerResponse subscriber : subscribers) {
+            if (!subscriber.writeQueueFull()) {
+                subscriber.write(event);
+            }
+        }
+    }
+
+    /**
+     * @return the event for the current statistics, only encoded again when their version changed
+     */
+    private Buffer event() {
+        EncodedStatistics encoded = EncodedStatistics.encode(transactionRepository.getStatistics(), encodedStatistics);
+        if (encoded != encodedStatistics || event == null) {
+            Buffer json = encoded.getBody();
+            event = Buffer.buffer(json.length() + 8).appendString("data: ").appendBuffer(json).appendString("\n\n");
+            encodedStatistics = encoded;
+        }
+        return event;
+    }
+
+    void stop() {
+        if (timer != -1) {
+            vertx.cancelTimer(timer);
+            timer = -1;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import com.arthurtaborda.transactionmonitor.repository.Dimension;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Parses a batch of transactions while its chunks arrive, either as a JSON array of transactions or as
+ * newline delimited JSON (one transaction per line).
+ * <p>
+ * Parsed transactions are collected into primitive arrays and handed to the repository in one call every
+ * {@link #BATCH_SIZE} transactions and at the end of the request. Only the bytes of the transaction being
+ * parsed are kept between chunks, and a copy of the transactions with dimension values until they are added.
+ * <p>
+ * Transactions are added to the {@link DimensionStatistics} and {@link TopTransactions} once the repository added
+ * them, those with dimension values are parsed again from their copy. Both check the window like the repository
+ * does, so the transactions the repository rejected for being too old are left out of them too.
+ * <p>
+ * If the repository is overloaded, the transactions of the failed call and the ones parsed after it are shed:
+ * they are not added anywhere and are only counted.
+ * <p>
+ * A transaction still incomplete after {@link TransactionParser#MAX_LENGTH} bytes makes the batch malformed: it is
+ * counted as invalid and the rest of the body is dropped.
+ */
+class TransactionBatch implements Handler<Buffer> {
+
+    static final int BATCH_SIZE = 1024;
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+
+    static final Latency ADD_LATENCY = Metrics.latency("repository_add_batch_seconds", "",
+                                                        "Time spent adding a batch of transactions to the repository");
+
+    private enum State {
+        BEFORE_ARRAY, BEFORE_FIRST_ITEM, BEFORE_ITEM, IN_ITEM, AFTER_ITEM, AFTER_ARRAY, MALFORMED
+    }
+
+    private final TransactionRepository repository;
+    private final DimensionStatistics dimensions;
+    private final TopTransactions top;
+    private final TransactionParser parser;
+    private final boolean ndjson;
+
+    private final double[] amounts;
+    private final long[] timestamps;
+    /**
+     * Start and end of the copy of every transaction in {@link #items}, or -1 if it has no dimension values
+     */
+    private final int[] itemStarts;
+    private final int[] itemEnds;
+    private Buffer items;
+    private int size;
+
+    private long accepted;
+    private long rejected;
+    private long invalid;
+    private long shed;
+    private long retryAfterMillis;
+
+    private Buffer data;
+    private int position;
+    private int itemStart;
+
+    private State state;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+
+    /**
+     * @param ndjson <tt>true</tt> if the body is newline delimited JSON, <tt>false</tt> if it is a JSON array
+     */
+    TransactionBatch(TransactionRepository repository, DimensionStatistics dimensions, TopTransactions top,
+                     TransactionParser parser, boolean ndjson) {
+        this.repository = repository;
+        this.dimensions = dimensions;
+        this.top = top;
+        this.parser = parser;
+        this.ndjson = ndjson;
+        this.amounts = new double[BATCH_SIZE];
+        this.timestamps = new long[BATCH_SIZE];
+        this.itemStarts = new int[BATCH_SIZE];
+        this.itemEnds = new int[BATCH_SIZE];
+        this.state = ndjson ? State.BEFORE_ITEM : State.BEFORE_ARRAY;
+    }
+
+    @Override
+    public void handle(Buffer chunk) {
+        if (state == State.MALFORMED) {
+            return;
+        }
+        if (data == null) {
+            data = chunk;
+        } else {
+            data.appendBuffer(chunk);
+        }
+
+        if (ndjson) {
+            scanLines();
+        } else {
+            scanArray();
+        }
+        compact();
+    }
+
+    /**
+     * Parses what is left of the body and applies the last transactions to the repository
+     *
+     * @return <tt>false</tt> if the body was not a well formed batch
+     */
+    boolean end() {
+        if (ndjson && state != State.MALFORMED && data != null && itemStart < data.length()) {
+            parseLine(itemStart, data.length());
+        }
+        flush();
+        if (state == State.MALFORMED || !ndjson && state != State.AFTER_ARRAY) {
+            invalid++;
+            return false;
+        }
+        return true;
+    }
+
+    long getAccepted() {
+        return accepted;
+    }
+
+    long getRejected() {
+        return rejected;
+    }
+
+    long getInvalid() {
+        return invalid;
+    }
+
+    long getShed() {
+        return shed;
+    }
+
+    /**
+     * @return how long to wait before sending the shed transactions again, or 0 if none was shed
+     */
+    long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    private void scanLines() {
+        int length = data.length();
+        while (position < length) {
+            if (data.getByte(position) == '\n') {
+                parseLine(itemStart, position);
+                itemStart = position + 1;
+            } else if (position - itemStart >= TransactionParser.MAX_LENGTH) {
+                state = State.MALFORMED;
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void parseLine(int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = data.getByte(i);
+            if (b != ' ' && b != '\t' && b != '\r') {
+                parseItem(start, end);
+                return;
+            }
+        }
+    }
+
+    private void scanArray() {
+        int length = data.length();
+        while (position < length && state != State.MALFORMED) {
+            byte b = data.getByte(position);
+            switch (state) {
+                case IN_ITEM:
+                    scanItem(b);
+                    if (state == State.IN_ITEM && position + 1 - itemStart >= TransactionParser.MAX_LENGTH) {
+                        state = State.MALFORMED;
+                    }
+                    break;
+                case BEFORE_ARRAY:
+                    if (b == '[') {
+                        state = State.BEFORE_FIRST_ITEM;
+                    } else if (!isWhitespace(b)) {
+                        state = State.MALFORMED;
+                    }
+                    break;
+                case BEFORE_FIRST_ITEM:
+                case BEFORE_ITEM:
+                    if (b == '{') {
+                        state = State.IN_ITEM;
+                        itemStart = position;
+                        depth = 1;
+                    } else if (b == ']' && state == State.BEFORE_FIRST_ITEM) {
+                        state = State.AFTER_ARRAY;
+                    } else if (!isWhitespace(b)) {
+                        state = State.MALFORMED;
+                    }
+                    break;
+                case AFTER_ITEM:
+                    if (b == ',') {
+                        state = State.BEFORE_ITEM;
+                    } else if (b == ']') {
+                        state = State.AFTER_ARRAY;
+                    } else if (!isWhitespace(b)) {
+                        state = State.MALFORMED;
+                    }
+                    break;
+                case AFTER_ARRAY:
+                    if (!isWhitespace(b)) {
+                        state = State.MALFORMED;
+                    }
+                    break;
+            }
+            position++;
+        }
+    }
+
+    private void scanItem(byte b) {
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+            } else if (b == '"') {
+                inString = false;
+            }
+        } else if (b == '"') {
+            inString = true;
+        } else if (b == '{' || b == '[') {
+            depth++;
+        } else if ((b == '}' || b == ']') && --depth == 0) {
+            parseItem(itemStart, position + 1);
+            state = State.AFTER_ITEM;
+        }
+    }
+
+    private void parseItem(int start, int end) {
+        if (parser.parse(data, start, end) != TransactionParser.Result.VALID) {
+            invalid++;
+            return;
+        }
+        if (shed > 0) {
+            shed++;
+            return;
+        }
+        if (hasDimensionValues()) {
+            if (items == null) {
+                items = Buffer.buffer(end - start);
+            }
+            itemStarts[size] = items.length();
+            items.appendBuffer(data, start, end - start);
+            itemEnds[size] = items.length();
+        } else {
+            itemStarts[size] = -1;
+        }
+        amounts[size] = parser.getAmount();
+        timestamps[size] = parser.getTimestamp();
+        if (++size == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (size == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        int added = 0;
+        try {
+            added = repository.addTransactions(amounts, timestamps, size);
+            accepted += added;
+            rejected += size - added;
+        } catch (RepositoryOverloadedException e) {
+            shed += size;
+            retryAfterMillis = e.getRetryAfterMillis();
+        }
+        ADD_LATENCY.recordSince(start);
+        if (added > 0) {
+            addToDimensionsAndTop();
+        }
+        items = null;
+        size = 0;
+    }
+
+    private void addToDimensionsAndTop() {
+        for (int i = 0; i < size; i++) {
+            if (itemStarts[i] < 0) {
+                top.add(amounts[i], timestamps[i], null);
+            } else {
+                parser.parse(items, itemStarts[i], itemEnds[i]);
+                parser.addToDimensions(dimensions);
+                top.add(parser.getAmount(), parser.getTimestamp(), parser);
+            }
+        }
+    }
+
+    private boolean hasDimensionValues() {
+        for (Dimension dimension : DIMENSIONS) {
+            if (parser.getDimensionKey(dimension) != DimensionStatistics.NO_KEY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the bytes that were already parsed, keeping the transaction that is still incomplete
+     */
+    private void compact() {
+        if (state == State.MALFORMED) {
+            data = null;
+            position = 0;
+            itemStart = 0;
+            return;
+        }
+        int keepFrom = ndjson || state == State.IN_ITEM ? itemStart : position;
+        if (keepFrom == 0) {
+            return;
+        }
+        data = keepFrom == data.length() ? null : data.getBuffer(keepFrom, data.length());
+        position -= keepFrom;
+        itemStart -= keepFrom;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
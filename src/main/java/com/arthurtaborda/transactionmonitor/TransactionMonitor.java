@@ -1,19 +1,259 @@
 package com.arthurtaborda.transactionmonitor;
 
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.ColumnarTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.Dimension;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.DurableTransactionRepository;
 import com.arthurtaborda.transactionmonitor.repository.InMemTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.MaintenanceScheduler;
+import com.arthurtaborda.transactionmonitor.repository.QueuedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.SingleWriterTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.StatisticsArchive;
+import com.arthurtaborda.transactionmonitor.repository.StripedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.VirtualThreads;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
 import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import static org.slf4j.LoggerFactory.getLogger;
 
 public class TransactionMonitor {
 
+    private static final Logger LOGGER = getLogger(TransactionMonitor.class.getName());
+
     private static final int PORT = 9090;
 
-    public static void main(String[] args) {
-        Vertx vertx = Vertx.vertx();
+    /**
+     * Startup is configured with system properties:
+     * <ul>
+     * <li><tt>repository</tt>: <tt>bucketed</tt> (default), <tt>striped</tt>, <tt>columnar</tt>,
+     * <tt>singlewriter</tt> or <tt>inmem</tt></li>
+     * <li><tt>allowedSkewMillis</tt>: how far in the future transaction timestamps are accepted, for producers
+     * whose clock is ahead, defaults to 0. Those transactions count in the statistics once their timestamp is
+     * reached.</li>
+     * <li><tt>logDirectory</tt>: when set, transactions are written to a log in this directory and replayed on startup</li>
+     * <li><tt>archiveDirectory</tt>: when set, the statistics of every second leaving the window are archived in
+     * this directory, downsampled to minutes and hours, and served for <tt>/statistics?from=..&amp;to=..</tt>.
+     * Only supported by the <tt>bucketed</tt> repository.</li>
+     * <li><tt>ingestQueueCapacity</tt>: when set, transactions are put in a queue of this capacity and added to the
+     * repository by a dedicated thread. When the queue is full, requests are answered with a 503 and a Retry-After
+     * header, see {@link QueuedTransactionRepository}. Not supported with the <tt>singlewriter</tt> repository,
+     * which already queues transactions in its ring.</li>
+     * <li><tt>dimensionMaxKeys</tt>: maximum number of merchants, currencies or accounts with statistics,
+     * defaults to 10000 each</li>
+     * <li><tt>alertRules</tt>: rules separated by <tt>;</tt>, checked every second against the statistics of the
+     * repository, e.g. <tt>count(10s) &gt; 1000;max(60s) &gt; 5000;count(1s) deviates 3 sigma over 5m</tt>. Alerts
+     * are published on the event bus and streamed on <tt>/alerts/stream</tt>, see {@link AlertEngine}</li>
+     * <li><tt>cluster</tt>: <tt>true</tt> to join the other nodes found by the Vert.x cluster manager, so the
+     * statistics are merged from all of them</li>
+     * <li><tt>binaryPort</tt>: when set, transactions are also received in binary frames over TCP on this port,
+     * see {@link BinaryIngestServer}</li>
+     * <li><tt>instances</tt>: number of {@link RestApi} verticles sharing the port, defaults to the number of cores</li>
+     * <li><tt>eventLoopPoolSize</tt>: number of event loop threads, defaults to twice the number of cores</li>
+     * <li><tt>workerPoolSize</tt>: number of worker threads, defaults to 20</li>
+     * <li><tt>maintenanceThreads</tt>: <tt>platform</tt> (default) or <tt>virtual</tt>, the kind of thread running
+     * the maintenance ticks of the repository, see {@link MaintenanceScheduler}</li>
+     * <li><tt>handlerThreads</tt>: <tt>eventloop</tt> (default), <tt>worker</tt> or <tt>virtual</tt>, where single
+     * transactions and statistics requests are handled once they are read: on the event loop, on the Vert.x worker
+     * pool or on a virtual thread per request. Meant for comparing the three under load.</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws IOException {
+        VertxOptions vertxOptions = new VertxOptions()
+                .setEventLoopPoolSize(Integer.getInteger("eventLoopPoolSize", VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE))
+                .setWorkerPoolSize(Integer.getInteger("workerPoolSize", VertxOptions.DEFAULT_WORKER_POOL_SIZE));
+        if (!Boolean.getBoolean("cluster")) {
+            start(Vertx.vertx(vertxOptions), false);
+            return;
+        }
+
+        Vertx.clusteredVertx(vertxOptions.setClustered(true), result -> {
+            if (result.failed()) {
+                LOGGER.error("Could not join the cluster", result.cause());
+                return;
+            }
+            try {
+                start(result.result(), true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void start(Vertx vertx, boolean cluster) throws IOException {
+        long allowedSkewMillis = Long.getLong("allowedSkewMillis", 0);
+        String archiveDirectory = System.getProperty("archiveDirectory");
+        StatisticsArchive archive = archiveDirectory == null ? null : new StatisticsArchive(Paths.get(archiveDirectory));
+        MaintenanceScheduler scheduler = new MaintenanceScheduler(
+                "virtual".equals(System.getProperty("maintenanceThreads", "platform")));
+        String type = System.getProperty("repository", "bucketed");
+        Integer ingestQueueCapacity = Integer.getInteger("ingestQueueCapacity");
+        if (ingestQueueCapacity != null && type.equals("singlewriter")) {
+            throw new IllegalArgumentException("The singlewriter repository can not be put behind an ingest queue");
+        }
+        TransactionRepository repository = createRepository(type, scheduler, allowedSkewMillis, archive);
+        String logDirectory = System.getProperty("logDirectory");
+        if (logDirectory != null) {
+            repository = new DurableTransactionRepository(scheduler, repository, Paths.get(logDirectory),
+                                                          allowedSkewMillis);
+        }
+        if (ingestQueueCapacity != null) {
+            repository = new QueuedTransactionRepository(repository, ingestQueueCapacity, allowedSkewMillis);
+        }
+        DimensionStatistics dimensions = new DimensionStatistics(
+                Integer.getInteger("dimensionMaxKeys", DimensionStatistics.DEFAULT_MAX_KEYS), allowedSkewMillis);
+        int instances = Integer.getInteger("instances", Runtime.getRuntime().availableProcessors());
+        // one stripe per event loop serving requests
+        TopTransactions top = new TopTransactions(allowedSkewMillis, instances);
+        String alertRules = System.getProperty("alertRules");
+        if (alertRules != null) {
+            new AlertEngine(vertx, repository, AlertRule.parseAll(alertRules, AlertEngine.TICK_INTERVAL_MS)).start();
+        }
+        Executor handlerExecutor = createHandlerExecutor(System.getProperty("handlerThreads", "eventloop"), vertx);
+        deploy(vertx, PORT, repository, dimensions, top, cluster, handlerExecutor, instances);
+        Integer binaryPort = Integer.getInteger("binaryPort");
+        if (binaryPort != null) {
+            deployBinary(vertx, binaryPort, repository, top, instances);
+        }
+    }
+
+    /**
+     * @param type              one of <tt>bucketed</tt>, <tt>striped</tt>, <tt>columnar</tt>, <tt>singlewriter</tt>
+     *                          or <tt>inmem</tt>
+     * @param scheduler         scheduler of the maintenance ticks of the <tt>inmem</tt> repository
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     * @param archive           archive of the statistics leaving the window, or <tt>null</tt>
+     * @throws IllegalArgumentException if the repository type can not archive its statistics
+     */
+    static TransactionRepository createRepository(String type, MaintenanceScheduler scheduler,
+                                                  long allowedSkewMillis, StatisticsArchive archive) {
+        if (archive != null && !type.equals("bucketed")) {
+            throw new IllegalArgumentException("Only the bucketed repository archives statistics: " + type);
+        }
+        switch (type) {
+            case "bucketed":
+                return new BucketedTransactionRepository(BucketedTransactionRepository.DEFAULT_BUCKET_COUNT,
+                                                         allowedSkewMillis, archive);
+            case "striped":
+                return new StripedTransactionRepository(StripedTransactionRepository.DEFAULT_BUCKET_COUNT,
+                                                        allowedSkewMillis);
+            case "columnar":
+                return new ColumnarTransactionRepository(ColumnarTransactionRepository.DEFAULT_CAPACITY,
+                                                         allowedSkewMillis);
+            case "singlewriter":
+                return new SingleWriterTransactionRepository(SingleWriterTransactionRepository.DEFAULT_RING_SIZE,
+                                                             allowedSkewMillis);
+            case "inmem":
+                return new InMemTransactionRepository(scheduler, allowedSkewMillis);
+            default:
+                throw new IllegalArgumentException("Unknown repository: " + type);
+        }
+    }
+
+    /**
+     * @param threads one of <tt>eventloop</tt>, <tt>worker</tt> or <tt>virtual</tt>
+     * @return the executor of the {@link RestApi} handlers, <tt>null</tt> for the event loop
+     */
+    static Executor createHandlerExecutor(String threads, Vertx vertx) {
+        switch (threads) {
+            case "eventloop":
+                return null;
+            case "worker":
+                return task -> vertx.executeBlocking(future -> {
+                    task.run();
+                    future.complete();
+                }, false, null);
+            case "virtual":
+                ThreadFactory factory = VirtualThreads.factory("handler-", true);
+                return task -> factory.newThread(task).start();
+            default:
+                throw new IllegalArgumentException("Unknown handler threads: " + threads);
+        }
+    }
+
+    /**
+     * Deploys <tt>instances</tt> {@link RestApi} verticles listening on the same port. Vert.x spreads the
+     * connections over them, so every instance serves requests on its own event loop, while all of them share
+     * the thread safe repository, dimension statistics and top transactions.
+     */
+    static CompositeFuture deploy(Vertx vertx, int port, TransactionRepository repository, int instances) {
+        return deploy(vertx, port, repository, new DimensionStatistics(), new TopTransactions(), false, null,
+                      instances);
+    }
+
+    /**
+     * @param cluster         <tt>true</tt> to merge the statistics of every node sharing the event bus of
+     *                        <tt>vertx</tt>
+     * @param handlerExecutor executor of the handlers, see {@link #createHandlerExecutor(String, Vertx)}
+     */
+    static CompositeFuture deploy(Vertx vertx, int port, TransactionRepository repository,
+                                  DimensionStatistics dimensions, TopTransactions top, boolean cluster,
+                                  Executor handlerExecutor, int instances) {
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("port", port));
+        registerGauges(repository, dimensions);
+        ClusterStatistics clusterStatistics = null;
+        if (cluster) {
+            clusterStatistics = new ClusterStatistics(vertx, repository);
+            clusterStatistics.start();
+        }
+        List<Future<String>> deployments = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            Future<String> deployment = Future.future();
+            vertx.deployVerticle(new RestApi(port, repository, dimensions, top, clusterStatistics, handlerExecutor),
+                                 options, deployment.completer());
+            deployments.add(deployment);
+        }
+        return all(deployments);
+    }
+
+    /**
+     * Deploys <tt>instances</tt> {@link BinaryIngestServer} verticles listening on the same port
+     */
+    static CompositeFuture deployBinary(Vertx vertx, int port, TransactionRepository repository, TopTransactions top,
+                                        int instances) {
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("port", port));
+        List<Future<String>> deployments = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            Future<String> deployment = Future.future();
+            vertx.deployVerticle(new BinaryIngestServer(port, repository, top), options, deployment.completer());
+            deployments.add(deployment);
+        }
+        return all(deployments);
+    }
+
+    /**
+     * {@link CompositeFuture#all(List)} takes raw futures in this version of Vert.x
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static CompositeFuture all(List<Future<String>> deployments) {
+        return CompositeFuture.all((List) deployments);
+    }
 
-        RestApi verticle = new RestApi(PORT, new InMemTransactionRepository(vertx));
-        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("port", 9090));
-        vertx.deployVerticle(verticle, options);
+    private static void registerGauges(TransactionRepository repository, DimensionStatistics dimensions) {
+        Metrics.gauge("transactions_in_window", "", "Transactions in the last 60 seconds",
+                      () -> repository.getStatistics().getCount());
+        for (Dimension dimension : Dimension.values()) {
+            Metrics.gauge("dimension_keys", "dimension=\"" + dimension.getField() + "\"",
+                          "Merchants, currencies or accounts with statistics", () -> dimensions.size(dimension));
+        }
+        Metrics.gauge("dimension_dropped_keys", "",
+                      "Merchants, currencies or accounts without statistics because the limit of keys was reached",
+                      dimensions::getDroppedKeys);
     }
 }
@@ -0,0 +1,597 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.Dimension;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.DimensionValues;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads the amount and timestamp of a transaction straight from the bytes of a JSON request.
+ * <p>
+ * The whole document is validated, but nothing is built from it: the bytes are copied into an array owned by
+ * the parser, which only grows for larger documents up to {@link #MAX_LENGTH}, and the two fields are kept as primitives in this parser,
+ * so parsing a request does not allocate. The optional {@link Dimension} fields are kept as the key of their
+ * value (see {@link DimensionStatistics#key(byte[], int, int)}), hashed straight from the bytes, and the value
+ * itself is only decoded when asked for.
+ * Numbers that can not be converted exactly with plain double arithmetic (more than 15 significant digits or
+ * large exponents) fall back to {@link Double#parseDouble(String)}, and strings with escape sequences are
+ * decoded before being hashed.
+ * <p>
+ * Instances hold the result of the last parse and must only be used by one thread, e.g. one per event loop.
+ */
+class TransactionParser implements DimensionValues {
+
+    enum Result {
+        VALID(null),
+        INVALID_JSON("Json is invalid"),
+        AMOUNT_REQUIRED("Amount is required"),
+        AMOUNT_INVALID("Amount is invalid"),
+        TIMESTAMP_REQUIRED("Timestamp is required"),
+        TIMESTAMP_INVALID("Timestamp is invalid"),
+        DIMENSION_INVALID("Merchant, currency and account must be strings"),
+        TOO_LARGE("Transaction is too large");
+
+        private final String message;
+
+        Result(String message) {
+            this.message = message;
+        }
+
+        String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Largest transaction document accepted, in bytes, far more than the fields of a transaction take
+     */
+    static final int MAX_LENGTH = 4096;
+
+    private static final int MAX_DEPTH = 64;
+
+    private static final byte[] AMOUNT = "amount".getBytes(US_ASCII);
+    private static final byte[] TIMESTAMP = "timestamp".getBytes(US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(US_ASCII);
+    private static final byte[] NULL = "null".getBytes(US_ASCII);
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+    private static final byte[][] DIMENSION_FIELDS = new byte[DIMENSIONS.length][];
+
+    static {
+        for (Dimension dimension : DIMENSIONS) {
+            DIMENSION_FIELDS[dimension.ordinal()] = dimension.getField().getBytes(US_ASCII);
+        }
+    }
+
+    private static final int MISSING = 0;
+    private static final int NUMBER = 1;
+    private static final int NOT_A_NUMBER = 2;
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private byte[] bytes = new byte[256];
+    private int position;
+    private int end;
+
+    private int keyStart;
+    private int keyEnd;
+    private boolean keyEscaped;
+    private boolean escaped;
+
+    private int numberStart;
+    private int numberEnd;
+    private boolean negative;
+    private long mantissa;
+    private int exponent;
+    private boolean integral;
+    private boolean exact;
+
+    private int amountState;
+    private double amount;
+    private int timestampState;
+    private long timestamp;
+    private boolean timestampInRange;
+    private final long[] dimensionKeys = new long[DIMENSIONS.length];
+    private final int[] dimensionStarts = new int[DIMENSIONS.length];
+    private final int[] dimensionEnds = new int[DIMENSIONS.length];
+    private final boolean[] dimensionsEscaped = new boolean[DIMENSIONS.length];
+    private boolean dimensionInvalid;
+
+    double getAmount() {
+        return amount;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the key of the value of the dimension, or {@link DimensionStatistics#NO_KEY} if it was not sent
+     */
+    @Override
+    public long getDimensionKey(Dimension dimension) {
+        return dimensionKeys[dimension.ordinal()];
+    }
+
+    @Override
+    public String getDimensionValue(Dimension dimension) {
+        int i = dimension.ordinal();
+        if (dimensionKeys[i] == DimensionStatistics.NO_KEY) {
+            return null;
+        }
+        return dimensionsEscaped[i]
+                ? decodeString(dimensionStarts[i], dimensionEnds[i])
+                : new String(bytes, dimensionStarts[i] + 1, dimensionEnds[i] - dimensionStarts[i] - 2, UTF_8);
+    }
+
+    /**
+     * Adds the last parsed transaction to the statistics of every dimension it has a value for
+     */
+    void addToDimensions(DimensionStatistics dimensions) {
+        for (Dimension dimension : DIMENSIONS) {
+            long key = dimensionKeys[dimension.ordinal()];
+            if (key != DimensionStatistics.NO_KEY) {
+                dimensions.add(dimension, key, amount, timestamp);
+            }
+        }
+    }
+
+    Result parse(Buffer buffer) {
+        return parse(buffer, 0, buffer.length());
+    }
+
+    /**
+     * Parses the JSON object between <tt>start</tt> (inclusive) and <tt>end</tt> (exclusive).
+     * When the result is {@link Result#VALID}, the fields can be read with {@link #getAmount()} and
+     * {@link #getTimestamp()}.
+     */
+    Result parse(Buffer buffer, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return Result.TOO_LARGE;
+        }
+        if (bytes.length < length) {
+            bytes = new byte[Math.min(MAX_LENGTH, Math.max(length, bytes.length * 2))];
+        }
+        buffer.getBytes(start, end, bytes, 0);
+        this.position = 0;
+        this.end = length;
+        this.amountState = MISSING;
+        this.timestampState = MISSING;
+        this.dimensionInvalid = false;
+        for (int i = 0; i < dimensionKeys.length; i++) {
+            dimensionKeys[i] = DimensionStatistics.NO_KEY;
+        }
+
+        skipWhitespace();
+        if (!peek('{') || !parseTransaction()) {
+            return Result.INVALID_JSON;
+        }
+        skipWhitespace();
+        if (position != this.end) {
+            return Result.INVALID_JSON;
+        }
+
+        if (amountState == MISSING) {
+            return Result.AMOUNT_REQUIRED;
+        }
+        if (amountState == NOT_A_NUMBER) {
+            return Result.AMOUNT_INVALID;
+        }
+        if (timestampState == MISSING) {
+            return Result.TIMESTAMP_REQUIRED;
+        }
+        if (timestampState == NOT_A_NUMBER || !timestampInRange) {
+            return Result.TIMESTAMP_INVALID;
+        }
+        if (dimensionInvalid) {
+            return Result.DIMENSION_INVALID;
+        }
+        return Result.VALID;
+    }
+
+    private boolean parseTransaction() {
+        position++;
+        skipWhitespace();
+        if (peek('}')) {
+            position++;
+            return true;
+        }
+        while (true) {
+            if (!parseKey()) {
+                return false;
+            }
+            if (isKey(AMOUNT)) {
+                if (!parseAmount()) {
+                    return false;
+                }
+            } else if (isKey(TIMESTAMP)) {
+                if (!parseTimestamp()) {
+                    return false;
+                }
+            } else {
+                Dimension dimension = dimensionOfKey();
+                if (dimension != null ? !parseDimension(dimension) : !parseValue(1)) {
+                    return false;
+                }
+            }
+            skipWhitespace();
+            if (peek(',')) {
+                position++;
+                skipWhitespace();
+            } else if (peek('}')) {
+                position++;
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private Dimension dimensionOfKey() {
+        for (Dimension dimension : DIMENSIONS) {
+            if (isKey(DIMENSION_FIELDS[dimension.ordinal()])) {
+                return dimension;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A null value is the same as a missing one, any value that is not a string is invalid
+     */
+    private boolean parseDimension(Dimension dimension) {
+        if (peek('"')) {
+            int start = position;
+            escaped = false;
+            if (!parseString()) {
+                return false;
+            }
+            int i = dimension.ordinal();
+            dimensionStarts[i] = start;
+            dimensionEnds[i] = position;
+            dimensionsEscaped[i] = escaped;
+            dimensionKeys[i] = escaped
+                    ? DimensionStatistics.key(decodeString(start, position))
+                    : DimensionStatistics.key(bytes, start + 1, position - 1);
+            return true;
+        }
+        dimensionKeys[dimension.ordinal()] = DimensionStatistics.NO_KEY;
+        if (peek('n')) {
+            return parseLiteral(NULL);
+        }
+        dimensionInvalid = true;
+        return parseValue(1);
+    }
+
+    /**
+     * A null amount is reported as missing and any value that is not a number as invalid, like
+     * {@link io.vertx.core.json.JsonObject#getDouble(String)} does. Numbers too large for a double are invalid
+     * too, the statistics can not be computed with an infinite amount.
+     */
+    private boolean parseAmount() {
+        if (peekNumber()) {
+            if (!parseNumber()) {
+                return false;
+            }
+            amount = toDouble();
+            amountState = Double.isFinite(amount) ? NUMBER : NOT_A_NUMBER;
+            return true;
+        }
+        if (peek('n')) {
+            amountState = MISSING;
+            return parseLiteral(NULL);
+        }
+        amountState = NOT_A_NUMBER;
+        return parseValue(1);
+    }
+
+    private boolean parseTimestamp() {
+        if (peekNumber()) {
+            if (!parseNumber()) {
+                return false;
+            }
+            timestampState = NUMBER;
+            if (integral) {
+                timestampInRange = exact && exponent == 0;
+                timestamp = negative ? -mantissa : mantissa;
+            } else {
+                timestampInRange = true;
+                timestamp = (long) toDouble();
+            }
+            return true;
+        }
+        if (peek('n')) {
+            timestampState = MISSING;
+            return parseLiteral(NULL);
+        }
+        timestampState = NOT_A_NUMBER;
+        return parseValue(1);
+    }
+
+    private boolean parseValue(int depth) {
+        if (position >= end || depth > MAX_DEPTH) {
+            return false;
+        }
+        switch (bytes[position]) {
+            case '{':
+                return parseObject(depth);
+            case '[':
+                return parseArray(depth);
+            case '"':
+                return parseString();
+            case 't':
+                return parseLiteral(TRUE);
+            case 'f':
+                return parseLiteral(FALSE);
+            case 'n':
+                return parseLiteral(NULL);
+            default:
+                return peekNumber() && parseNumber();
+        }
+    }
+
+    private boolean parseObject(int depth) {
+        position++;
+        skipWhitespace();
+        if (peek('}')) {
+            position++;
+            return true;
+        }
+        while (true) {
+            if (!parseKey() || !parseValue(depth + 1)) {
+                return false;
+            }
+            skipWhitespace();
+            if (peek(',')) {
+                position++;
+                skipWhitespace();
+            } else if (peek('}')) {
+                position++;
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private boolean parseArray(int depth) {
+        position++;
+        skipWhitespace();
+        if (peek(']')) {
+            position++;
+            return true;
+        }
+        while (true) {
+            if (!parseValue(depth + 1)) {
+                return false;
+            }
+            skipWhitespace();
+            if (peek(',')) {
+                position++;
+                skipWhitespace();
+            } else if (peek(']')) {
+                position++;
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Parses a key and its colon, leaving the position at the start of the value
+     */
+    private boolean parseKey() {
+        if (!peek('"')) {
+            return false;
+        }
+        keyStart = position + 1;
+        escaped = false;
+        if (!parseString()) {
+            return false;
+        }
+        keyEscaped = escaped;
+        keyEnd = position - 1;
+        skipWhitespace();
+        if (!peek(':')) {
+            return false;
+        }
+        position++;
+        skipWhitespace();
+        return true;
+    }
+
+    private boolean isKey(byte[] name) {
+        if (keyEscaped || keyEnd - keyStart != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (bytes[keyStart + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean parseString() {
+        position++;
+        while (position < end) {
+            byte b = bytes[position++];
+            if (b == '"') {
+                return true;
+            }
+            if (b == '\\') {
+                escaped = true;
+                if (!parseEscape()) {
+                    return false;
+                }
+            } else if (b >= 0 && b < 0x20) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean parseEscape() {
+        if (position >= end) {
+            return false;
+        }
+        switch (bytes[position++]) {
+            case '"':
+            case '\\':
+            case '/':
+            case 'b':
+            case 'f':
+            case 'n':
+            case 'r':
+            case 't':
+                return true;
+            case 'u':
+                for (int i = 0; i < 4; i++) {
+                    if (position >= end || Character.digit(bytes[position++], 16) < 0) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decodes the escape sequences of the string between the quotes at <tt>start</tt> and <tt>end - 1</tt>
+     */
+    private String decodeString(int start, int end) {
+        return new JsonArray("[" + new String(bytes, start, end - start, UTF_8) + "]").getString(0);
+    }
+
+    private boolean parseLiteral(byte[] literal) {
+        if (end - position < literal.length) {
+            return false;
+        }
+        for (byte b : literal) {
+            if (bytes[position++] != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a number into {@link #mantissa} and a decimal {@link #exponent}, keeping track of whether all the
+     * digits fitted in the mantissa
+     */
+    private boolean parseNumber() {
+        int start = position;
+        negative = peek('-');
+        if (negative) {
+            position++;
+        }
+        mantissa = 0;
+        exponent = 0;
+        integral = true;
+        exact = true;
+
+        if (peek('0')) {
+            position++;
+        } else if (peekDigit()) {
+            while (peekDigit()) {
+                appendDigit(bytes[position++] - '0', false);
+            }
+        } else {
+            return false;
+        }
+
+        if (peek('.')) {
+            position++;
+            integral = false;
+            if (!peekDigit()) {
+                return false;
+            }
+            while (peekDigit()) {
+                appendDigit(bytes[position++] - '0', true);
+            }
+        }
+
+        if (peek('e') || peek('E')) {
+            position++;
+            integral = false;
+            boolean negativeExponent = peek('-');
+            if (negativeExponent || peek('+')) {
+                position++;
+            }
+            if (!peekDigit()) {
+                return false;
+            }
+            int value = 0;
+            while (peekDigit()) {
+                value = Math.min(value * 10 + bytes[position++] - '0', 100000);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        numberStart = start;
+        numberEnd = position;
+        return true;
+    }
+
+    private void appendDigit(int digit, boolean fraction) {
+        if (mantissa <= (Long.MAX_VALUE - digit) / 10) {
+            mantissa = mantissa * 10 + digit;
+            if (fraction) {
+                exponent--;
+            }
+        } else {
+            if (!fraction) {
+                exponent++;
+            }
+            if (digit != 0) {
+                exact = false;
+            }
+        }
+    }
+
+    private double toDouble() {
+        if (!exact || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(new String(bytes, numberStart, numberEnd - numberStart, US_ASCII));
+        }
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private boolean peekNumber() {
+        return peek('-') || peekDigit();
+    }
+
+    private boolean peekDigit() {
+        if (position >= end) {
+            return false;
+        }
+        byte b = bytes[position];
+        return b >= '0' && b <= '9';
+    }
+
+    private boolean peek(char c) {
+        return position < end && bytes[position] == c;
+    }
+
+    private void skipWhitespace() {
+        while (position < end) {
+            byte b = bytes[position];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.arthurtaborda.transactionmonitor.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count backed by a {@link LongAdder}, so threads incrementing it at the same time update
+ * different cells instead of contending on one value
+ */
+public class Counter extends Metric {
+
+    private final LongAdder count;
+
+    Counter(String name, String labels, String help) {
+        super(name, labels, help);
+        this.count = new LongAdder();
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long value) {
+        count.add(value);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSample(out, "", null, count.sum());
+    }
+}
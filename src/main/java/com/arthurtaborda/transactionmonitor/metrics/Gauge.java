@@ -0,0 +1,26 @@
+package com.arthurtaborda.transactionmonitor.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Value read when the metrics are scraped
+ */
+public class Gauge extends Metric {
+
+    private final DoubleSupplier value;
+
+    Gauge(String name, String labels, String help, DoubleSupplier value) {
+        super(name, labels, help);
+        this.value = value;
+    }
+
+    @Override
+    String getType() {
+        return "gauge";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSample(out, "", null, value.getAsDouble());
+    }
+}
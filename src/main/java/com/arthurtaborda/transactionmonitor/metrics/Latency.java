@@ -0,0 +1,57 @@
+package com.arthurtaborda.transactionmonitor.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Distribution of durations in nanoseconds, exposed in seconds as a Prometheus summary.
+ * <p>
+ * Durations go into an HdrHistogram {@link Recorder}, which records without locking or allocating and keeps
+ * 3 significant digits. The quantiles cover the durations recorded since the previous scrape, count and sum
+ * cover everything since startup.
+ */
+public class Latency extends Metric {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Recorder recorder;
+    private Histogram interval;
+    private long count;
+    private double sum;
+
+    Latency(String name, String labels, String help) {
+        super(name, labels, help);
+        this.recorder = new Recorder(3);
+    }
+
+    public void record(long nanos) {
+        recorder.recordValue(nanos);
+    }
+
+    /**
+     * Records the time elapsed since <tt>startNanos</tt>, taken from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        recorder.recordValue(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    String getType() {
+        return "summary";
+    }
+
+    @Override
+    synchronized void writeSamples(StringBuilder out) {
+        interval = recorder.getIntervalHistogram(interval);
+        count += interval.getTotalCount();
+        sum += interval.getMean() * interval.getTotalCount() / NANOS_PER_SECOND;
+
+        for (double quantile : QUANTILES) {
+            writeSample(out, "", "quantile=\"" + quantile + "\"",
+                        interval.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+        }
+        writeSample(out, "_sum", null, sum);
+        writeSample(out, "_count", null, count);
+    }
+}
@@ -0,0 +1,54 @@
+package com.arthurtaborda.transactionmonitor.metrics;
+
+/**
+ * A time series exposed in the Prometheus text format
+ */
+public abstract class Metric {
+
+    private final String name;
+    private final String labels;
+    private final String help;
+
+    /**
+     * @param labels Prometheus labels without braces, e.g. <tt>lock="window"</tt>, or an empty string
+     */
+    Metric(String name, String labels, String help) {
+        this.name = name;
+        this.labels = labels;
+        this.help = help;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String getLabels() {
+        return labels;
+    }
+
+    String getHelp() {
+        return help;
+    }
+
+    abstract String getType();
+
+    abstract void writeSamples(StringBuilder out);
+
+    void writeSample(StringBuilder out, String suffix, String extraLabel, double value) {
+        out.append(name).append(suffix);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,109 @@
+package com.arthurtaborda.transactionmonitor.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the metrics of the process.
+ * <p>
+ * Metrics are registered once, usually as constants of the class that updates them, and the hot paths only
+ * touch the metric itself: a {@link Counter} costs a {@link java.util.concurrent.atomic.LongAdder} increment and
+ * a {@link Latency} two {@link System#nanoTime()} calls and a wait free record.
+ */
+public final class Metrics {
+
+    private static final Map<String, Metric> METRICS = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help) {
+        return counter(name, "", help);
+    }
+
+    public static Counter counter(String name, String labels, String help) {
+        return register(new Counter(name, labels, help));
+    }
+
+    public static Latency latency(String name, String labels, String help) {
+        return register(new Latency(name, labels, help));
+    }
+
+    /**
+     * @param lock name of the lock, used as the <tt>lock</tt> label
+     * @return the time threads waited for the lock while another thread held it
+     */
+    public static Latency lockWaits(String lock) {
+        return latency("repository_lock_wait_seconds", "lock=\"" + lock + "\"",
+                       "Time spent waiting for a repository lock held by another thread");
+    }
+
+    /**
+     * Registers a gauge, replacing the one with the same name and labels, e.g. of a previous repository
+     */
+    public static synchronized void gauge(String name, String labels, String help, DoubleSupplier value) {
+        METRICS.put(name + '{' + labels + '}', new Gauge(name, labels, help, value));
+    }
+
+    /**
+     * @return the metric already registered with the same name and labels, or the given one
+     */
+    @SuppressWarnings("unchecked")
+    private static synchronized <T extends Metric> T register(T metric) {
+        return (T) METRICS.computeIfAbsent(metric.getName() + '{' + metric.getLabels() + '}', key -> metric);
+    }
+
+    /**
+     * @return every metric in the Prometheus text format, the series of a metric grouped under one header
+     */
+    public static String scrape() {
+        Map<String, List<Metric>> byName = new LinkedHashMap<>();
+        synchronized (Metrics.class) {
+            for (Metric metric : METRICS.values()) {
+                byName.computeIfAbsent(metric.getName(), name -> new ArrayList<>()).add(metric);
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (List<Metric> series : byName.values()) {
+            Metric first = series.get(0);
+            out.append("# HELP ").append(first.getName()).append(' ').append(first.getHelp()).append('\n');
+            out.append("# TYPE ").append(first.getName()).append(' ').append(first.getType()).append('\n');
+            for (Metric metric : series) {
+                metric.writeSamples(out);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Takes the write lock, recording how long it waited only when the lock was not free, so uncontended
+     * locking does not pay for reading the clock
+     */
+    public static long writeLock(StampedLock lock, Latency waits) {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = lock.writeLock();
+            waits.recordSince(start);
+        }
+        return stamp;
+    }
+
+    /**
+     * Same as {@link #writeLock(StampedLock, Latency)} for the read lock
+     */
+    public static long readLock(StampedLock lock, Latency waits) {
+        long stamp = lock.tryReadLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = lock.readLock();
+            waits.recordSince(start);
+        }
+        return stamp;
+    }
+}
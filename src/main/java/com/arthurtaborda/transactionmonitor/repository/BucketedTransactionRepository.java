@@ -0,0 +1,191 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import org.slf4j.Logger;
+
+import java.util.concurrent.locks.StampedLock;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the last 60 seconds as a fixed ring of buckets instead of a list of transactions.
+ * Every add updates the window totals straight away and buckets expire lazily as the window moves forward,
+ * so the statistics are always up to date, reading them is O(1) and memory does not grow with the number
+ * of transactions.
+ * <p>
+ * Every bucket also keeps a {@link QuantileSketch}, so percentiles of the amounts are estimated with a
+ * relative accuracy of 1% in bounded memory.
+ * <p>
+ * Expired seconds are rolled up into a ring of minute buckets, which serves windows of up to an hour, and
+ * optionally appended to a {@link StatisticsArchive}, which serves any range of time after that.
+ * Only transactions from the last 60 seconds are accepted, the longer windows are built from them as they age.
+ * <p>
+ * The window has the resolution of one bucket: a transaction leaves the statistics when its whole bucket
+ * is older than the window.
+ * <p>
+ * Transactions up to the allowed skew in the future are accepted into buckets ahead of the window, and only
+ * count in the statistics once the window reaches their bucket.
+ * <p>
+ * The whole window is guarded by one lock. Reading the statistics, including windowed and range reads, moves the
+ * window forward too, so it takes the write lock and is serialized with the adds. Range reads release it before
+ * reading the archive.
+ */
+public class BucketedTransactionRepository implements TransactionRepository {
+
+    public static final int DEFAULT_BUCKET_COUNT = 60;
+
+    private static final Logger LOGGER = getLogger(BucketedTransactionRepository.class.getName());
+    private static final Latency LOCK_WAITS = Metrics.lockWaits("bucketed");
+
+    private static final long WINDOW_MS = Transaction.WINDOW_MS;
+    private static final long MAX_WINDOW_MS = 3600000;
+
+    private final long allowedSkewMillis;
+    private final StampedLock windowLock;
+    private final SlidingWindow window;
+    private final SlidingWindow minutes;
+    private final StatisticsBucket merged;
+    private final StatisticsArchive archive;
+
+    public BucketedTransactionRepository() {
+        this(DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * @param bucketCount number of buckets the 60 seconds are split into, must divide 60000
+     */
+    public BucketedTransactionRepository(int bucketCount) {
+        this(bucketCount, 0);
+    }
+
+    /**
+     * @param bucketCount       number of buckets the 60 seconds are split into, must divide 60000
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     */
+    public BucketedTransactionRepository(int bucketCount, long allowedSkewMillis) {
+        this(bucketCount, allowedSkewMillis, null);
+    }
+
+    /**
+     * @param bucketCount       number of buckets the 60 seconds are split into, must divide 60000
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     * @param archive           archive of the seconds that expire from the window, or <tt>null</tt>
+     */
+    public BucketedTransactionRepository(int bucketCount, long allowedSkewMillis, StatisticsArchive archive) {
+        if (bucketCount <= 0 || WINDOW_MS % bucketCount != 0) {
+            throw new IllegalArgumentException("Bucket count must divide " + WINDOW_MS + ": " + bucketCount);
+        }
+        long bucketMillis = WINDOW_MS / bucketCount;
+        this.allowedSkewMillis = allowedSkewMillis;
+        this.windowLock = new StampedLock();
+        // one more minute than the longest window, for the minute the seconds are being rolled into
+        this.minutes = new SlidingWindow((int) (MAX_WINDOW_MS / WINDOW_MS) + 1, WINDOW_MS, true, null);
+        this.window = new SlidingWindow(bucketCount, bucketMillis,
+                                        SlidingWindow.futureBuckets(allowedSkewMillis, bucketMillis), true, minutes);
+        this.merged = new StatisticsBucket(true);
+        this.archive = archive;
+        window.setArchive(archive);
+    }
+
+    @Override
+    public boolean addTransaction(Transaction transaction) {
+        return addTransaction(transaction.getAmount(), transaction.getTimestamp());
+    }
+
+    @Override
+    public boolean addTransaction(double amount, long timestamp) {
+        if (!Transaction.happenedInLastMinute(timestamp, allowedSkewMillis)) {
+            return false;
+        }
+
+        long writeLock = Metrics.writeLock(windowLock, LOCK_WAITS);
+        try {
+            return window.add(amount, timestamp, currentTimeMillis());
+        } finally {
+            windowLock.unlockWrite(writeLock);
+        }
+    }
+
+    @Override
+    public int addTransactions(double[] amounts, long[] timestamps, int length) {
+        int added = 0;
+        long writeLock = Metrics.writeLock(windowLock, LOCK_WAITS);
+        try {
+            long now = currentTimeMillis();
+            for (int i = 0; i < length; i++) {
+                if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis)
+                    && window.add(amounts[i], timestamps[i], now)) {
+                    added++;
+                }
+            }
+        } finally {
+            windowLock.unlockWrite(writeLock);
+        }
+        return added;
+    }
+
+    @Override
+    public TransactionStatistics getStatistics() {
+        LOGGER.debug("Get statistics");
+        long writeLock = Metrics.writeLock(windowLock, LOCK_WAITS);
+        try {
+            return window.statistics(currentTimeMillis());
+        } finally {
+            windowLock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * Windows shorter than 60 seconds are merged from the last second buckets, longer ones from the 60 seconds
+     * plus the minute buckets, so they have the resolution of one minute.
+     *
+     * @param windowMillis between 1 millisecond and 1 hour
+     */
+    @Override
+    public TransactionStatistics getStatistics(long windowMillis) {
+        if (windowMillis <= 0 || windowMillis > MAX_WINDOW_MS) {
+            throw new IllegalArgumentException("Window not supported: " + windowMillis);
+        }
+        if (windowMillis == WINDOW_MS) {
+            return getStatistics();
+        }
+
+        LOGGER.debug("Get statistics");
+        long writeLock = Metrics.writeLock(windowLock, LOCK_WAITS);
+        try {
+            long now = currentTimeMillis();
+            merged.reset(-1);
+            if (windowMillis < WINDOW_MS) {
+                window.mergeInto(merged, now - windowMillis + 1, now);
+            } else {
+                window.mergeInto(merged, now);
+                minutes.mergeInto(merged, now - windowMillis + 1, now);
+            }
+            return merged.toStatistics();
+        } finally {
+            windowLock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * Seconds are appended to the archive when the window moves past them, so the window is moved first. The range
+     * is read from the archive without holding the lock of the window.
+     *
+     * @throws IllegalArgumentException if the repository has no archive
+     */
+    @Override
+    public TransactionStatistics getStatistics(long fromMillis, long toMillis) {
+        if (archive == null) {
+            throw new IllegalArgumentException("Statistics are not archived");
+        }
+        long writeLock = Metrics.writeLock(windowLock, LOCK_WAITS);
+        try {
+            window.advance(currentTimeMillis());
+        } finally {
+            windowLock.unlockWrite(writeLock);
+        }
+        return archive.getStatistics(fromMillis, toMillis);
+    }
+}
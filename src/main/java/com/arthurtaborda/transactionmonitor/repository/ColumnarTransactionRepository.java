@@ -0,0 +1,232 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import com.arthurtaborda.transactionmonitor.metrics.Counter;
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the raw transactions of the last 60 seconds, for callers that need more than the statistics, without
+ * creating an object per transaction.
+ * <p>
+ * Amounts and timestamps are stored in two off-heap columns used as a ring buffer in arrival order: adds
+ * write at the tail and expired transactions are dropped in bulk by moving the head forward. Heap usage does
+ * not depend on the number of transactions, the ring is allocated once with a fixed capacity, and a
+ * transaction that does not fit is rejected. Rejected transactions are counted in
+ * <tt>columnar_ring_dropped_total</tt>, and a warning is logged each time the ring becomes full rather than for
+ * every one of them.
+ * <p>
+ * Transactions arrive out of timestamp order, so the head stops at the first one still in the window and a few
+ * expired ones can stay behind it, at most until it expires too. They are skipped when the ring is read.
+ * <p>
+ * The statistics are kept by a {@link SlidingWindow} next to the ring, so reading them does not scan it.
+ * <p>
+ * Transactions up to the allowed skew in the future are kept in the ring too. They are only passed to
+ * {@link #forEachTransaction(TransactionConsumer)} once their timestamp is reached, and only counted in the
+ * statistics once the window reaches their bucket.
+ */
+public class ColumnarTransactionRepository implements TransactionRepository {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final Logger LOGGER = getLogger(ColumnarTransactionRepository.class.getName());
+    private static final Latency LOCK_WAITS = Metrics.lockWaits("columnar");
+    private static final Counter DROPPED = Metrics.counter("columnar_ring_dropped_total",
+                                                           "Transactions dropped because the ring was full");
+
+    private final long allowedSkewMillis;
+    private final StampedLock ringLock;
+    private final DoubleBuffer amounts;
+    private final LongBuffer timestamps;
+    private final int capacity;
+    private final SlidingWindow window;
+
+    private long head;
+    private long tail;
+    private long dropped;
+    private boolean full;
+
+    public ColumnarTransactionRepository() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of transactions kept at once, takes 16 bytes of native memory each
+     */
+    public ColumnarTransactionRepository(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity          maximum number of transactions kept at once, takes 16 bytes of native memory each
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     */
+    public ColumnarTransactionRepository(int capacity, long allowedSkewMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        long bucketMillis = Transaction.WINDOW_MS / 60;
+        this.allowedSkewMillis = allowedSkewMillis;
+        this.ringLock = new StampedLock();
+        this.capacity = capacity;
+        this.amounts = column(capacity).asDoubleBuffer();
+        this.timestamps = column(capacity).asLongBuffer();
+        this.window = new SlidingWindow(60, bucketMillis, SlidingWindow.futureBuckets(allowedSkewMillis, bucketMillis),
+                                        true, null);
+    }
+
+    private static ByteBuffer column(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public boolean addTransaction(Transaction transaction) {
+        return addTransaction(transaction.getAmount(), transaction.getTimestamp());
+    }
+
+    @Override
+    public boolean addTransaction(double amount, long timestamp) {
+        if (!Transaction.happenedInLastMinute(timestamp, allowedSkewMillis)) {
+            return false;
+        }
+
+        long writeLock = Metrics.writeLock(ringLock, LOCK_WAITS);
+        try {
+            return add(amount, timestamp, currentTimeMillis());
+        } finally {
+            ringLock.unlockWrite(writeLock);
+        }
+    }
+
+    @Override
+    public int addTransactions(double[] amounts, long[] timestamps, int length) {
+        int added = 0;
+        long writeLock = Metrics.writeLock(ringLock, LOCK_WAITS);
+        try {
+            long now = currentTimeMillis();
+            for (int i = 0; i < length; i++) {
+                if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis)
+                    && add(amounts[i], timestamps[i], now)) {
+                    added++;
+                }
+            }
+        } finally {
+            ringLock.unlockWrite(writeLock);
+        }
+        return added;
+    }
+
+    private boolean add(double amount, long timestamp, long now) {
+        if (tail - head == capacity) {
+            expire(now);
+            if (tail - head == capacity) {
+                drop();
+                return false;
+            }
+        }
+        full = false;
+        if (!window.add(amount, timestamp, now)) {
+            return false;
+        }
+        int index = (int) (tail % capacity);
+        amounts.put(index, amount);
+        timestamps.put(index, timestamp);
+        tail++;
+        return true;
+    }
+
+    /**
+     * Only warns when the ring becomes full, it stays full for every add until transactions expire
+     */
+    private void drop() {
+        dropped++;
+        DROPPED.increment();
+        if (!full) {
+            full = true;
+            LOGGER.warn("Transaction ring is full, dropping transactions until some expire");
+        }
+    }
+
+    private void expire(long now) {
+        while (head < tail && now - timestamps.get((int) (head % capacity)) >= Transaction.WINDOW_MS) {
+            head++;
+        }
+    }
+
+    @Override
+    public TransactionStatistics getStatistics() {
+        LOGGER.debug("Get statistics");
+        long writeLock = Metrics.writeLock(ringLock, LOCK_WAITS);
+        try {
+            long now = currentTimeMillis();
+            expire(now);
+            return window.statistics(now);
+        } finally {
+            ringLock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * Passes every transaction of the last 60 seconds to the consumer, in the order they were added.
+     * Adds wait until it returns.
+     *
+     * @return the number of transactions passed
+     */
+    public int forEachTransaction(TransactionConsumer consumer) {
+        long readLock = Metrics.readLock(ringLock, LOCK_WAITS);
+        try {
+            long now = currentTimeMillis();
+            int count = 0;
+            for (long sequence = head; sequence < tail; sequence++) {
+                int index = (int) (sequence % capacity);
+                long timestamp = timestamps.get(index);
+                if (timestamp <= now && now - timestamp < Transaction.WINDOW_MS) {
+                    consumer.accept(amounts.get(index), timestamp);
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            ringLock.unlockRead(readLock);
+        }
+    }
+
+    /**
+     * Number of transactions held by the ring, including the expired ones waiting behind the head
+     */
+    public int size() {
+        long readLock = Metrics.readLock(ringLock, LOCK_WAITS);
+        try {
+            return (int) (tail - head);
+        } finally {
+            ringLock.unlockRead(readLock);
+        }
+    }
+
+    /**
+     * @return number of transactions dropped because the ring was full
+     */
+    public long getDropped() {
+        long readLock = Metrics.readLock(ringLock, LOCK_WAITS);
+        try {
+            return dropped;
+        } finally {
+            ringLock.unlockRead(readLock);
+        }
+    }
+
+    @FunctionalInterface
+    public interface TransactionConsumer {
+
+        void accept(double amount, long timestamp);
+    }
+}
@@ -0,0 +1,43 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+/**
+ * Sum of doubles with Neumaier's compensated summation: the low order bits lost by every addition are accumulated
+ * in a second double and added back when the sum is read. The error does not grow with the number of additions,
+ * so a window that keeps adding and subtracting buckets does not drift away from the sum of its transactions.
+ * <p>
+ * This class is not thread safe.
+ */
+class CompensatedSum {
+
+    private double sum;
+    private double compensation;
+
+    void add(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+        sum = total;
+    }
+
+    void add(CompensatedSum other) {
+        add(other.sum);
+        add(other.compensation);
+    }
+
+    void subtract(CompensatedSum other) {
+        add(-other.sum);
+        add(-other.compensation);
+    }
+
+    void reset() {
+        sum = 0;
+        compensation = 0;
+    }
+
+    double get() {
+        return sum + compensation;
+    }
+}
@@ -0,0 +1,23 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+/**
+ * Optional fields of a transaction that statistics can be broken down by
+ */
+public enum Dimension {
+    MERCHANT("merchant"),
+    CURRENCY("currency"),
+    ACCOUNT("account");
+
+    private final String field;
+
+    Dimension(String field) {
+        this.field = field;
+    }
+
+    /**
+     * @return name of the JSON field and of the query parameter
+     */
+    public String getField() {
+        return field;
+    }
+}
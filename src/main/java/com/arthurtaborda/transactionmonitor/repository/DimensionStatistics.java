@@ -0,0 +1,264 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Statistics of the last 60 seconds for every value of each {@link Dimension}, e.g. per merchant.
+ * <p>
+ * Values are identified by a 64 bit hash of their UTF-8 bytes (see {@link #key(String)}), so no string is kept
+ * per value, and each one has its own {@link SlidingWindow} of 5 second buckets, without percentiles. The windows
+ * are kept in open addressing tables split in segments with their own lock, so adds for different values rarely
+ * wait for each other.
+ * <p>
+ * Memory is bounded by the maximum number of values per dimension, each one taking less than 1KB. When a
+ * segment is full, values that had no transaction for longer than the window are evicted to make room,
+ * and if none is idle the new value is dropped: its transactions still count in the overall statistics.
+ * <p>
+ * Transactions up to the allowed skew in the future are accepted and only counted once the window reaches them,
+ * see {@link SlidingWindow}.
+ */
+public class DimensionStatistics {
+
+    public static final long NO_KEY = 0;
+    public static final int DEFAULT_MAX_KEYS = 10000;
+
+    private static final int SEGMENTS = 16;
+    private static final int BUCKET_COUNT = 12;
+    private static final long BUCKET_MS = Transaction.WINDOW_MS / BUCKET_COUNT;
+    private static final long IDLE_MS = Transaction.WINDOW_MS + BUCKET_MS;
+    private static final long EVICTION_INTERVAL_MS = 1000;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Segment[][] segments;
+    private final LongAdder droppedKeys;
+    private final long allowedSkewMillis;
+
+    public DimensionStatistics() {
+        this(DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param maxKeys maximum number of values kept per dimension
+     */
+    public DimensionStatistics(int maxKeys) {
+        this(maxKeys, 0);
+    }
+
+    /**
+     * @param maxKeys           maximum number of values kept per dimension
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     */
+    public DimensionStatistics(int maxKeys, long allowedSkewMillis) {
+        this(maxKeys, allowedSkewMillis, IDLE_MS);
+    }
+
+    /**
+     * @param idleMillis time without transactions after which a value can be evicted
+     */
+    DimensionStatistics(int maxKeys, long allowedSkewMillis, long idleMillis) {
+        if (maxKeys < SEGMENTS) {
+            throw new IllegalArgumentException("Max keys must be at least " + SEGMENTS + ": " + maxKeys);
+        }
+        int futureBuckets = SlidingWindow.futureBuckets(allowedSkewMillis, BUCKET_MS);
+        this.segments = new Segment[Dimension.values().length][SEGMENTS];
+        for (Segment[] dimensionSegments : segments) {
+            for (int i = 0; i < SEGMENTS; i++) {
+                dimensionSegments[i] = new Segment((maxKeys + SEGMENTS - 1) / SEGMENTS, idleMillis, futureBuckets);
+            }
+        }
+        this.droppedKeys = new LongAdder();
+        this.allowedSkewMillis = allowedSkewMillis;
+    }
+
+    /**
+     * @return the key of a value, as computed by {@link #key(byte[], int, int)} from its UTF-8 bytes
+     */
+    public static long key(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        return key(bytes, 0, bytes.length);
+    }
+
+    /**
+     * FNV-1a hash of the bytes between <tt>start</tt> (inclusive) and <tt>end</tt> (exclusive),
+     * never {@link #NO_KEY}
+     */
+    public static long key(byte[] bytes, int start, int end) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash == NO_KEY ? 1 : hash;
+    }
+
+    /**
+     * @return <tt>true</tt> if the transaction was added to the statistics of the value
+     */
+    public boolean add(Dimension dimension, long key, double amount, long timestamp) {
+        if (key == NO_KEY || !Transaction.happenedInLastMinute(timestamp, allowedSkewMillis)) {
+            return false;
+        }
+        Segment segment = segmentFor(dimension, key);
+        long writeLock = segment.lock.writeLock();
+        try {
+            if (segment.add(key, amount, timestamp, currentTimeMillis())) {
+                return true;
+            }
+        } finally {
+            segment.lock.unlockWrite(writeLock);
+        }
+        droppedKeys.increment();
+        return false;
+    }
+
+    /**
+     * @return statistics about the transactions of the value from the last 60 seconds,
+     * empty if the value is not known
+     */
+    public TransactionStatistics getStatistics(Dimension dimension, long key) {
+        Segment segment = segmentFor(dimension, key);
+        long writeLock = segment.lock.writeLock();
+        try {
+            SlidingWindow window = segment.get(key);
+            return window == null ? new TransactionStatistics() : window.statistics(currentTimeMillis());
+        } finally {
+            segment.lock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * @return number of values of the dimension being kept, including idle ones not evicted yet
+     */
+    public int size(Dimension dimension) {
+        int size = 0;
+        for (Segment segment : segments[dimension.ordinal()]) {
+            long readLock = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(readLock);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of transactions whose value was dropped because its dimension was full
+     */
+    public long getDroppedKeys() {
+        return droppedKeys.sum();
+    }
+
+    private Segment segmentFor(Dimension dimension, long key) {
+        return segments[dimension.ordinal()][(int) (key >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private static int slot(long key, int mask) {
+        long mixed = (key ^ (key >>> 32)) * 0x9e3779b97f4a7c15L;
+        return (int) (mixed >>> 32) & mask;
+    }
+
+    /**
+     * Open addressing table with linear probing, {@link #NO_KEY} marks an empty slot
+     */
+    private static class Segment {
+
+        private final StampedLock lock;
+        private final int maxKeys;
+        private final int maxCapacity;
+        private final long idleMillis;
+        private final int futureBuckets;
+
+        private long[] keys;
+        private SlidingWindow[] windows;
+        private long[] lastTimestamps;
+        private int size;
+        private long lastEviction;
+
+        Segment(int maxKeys, long idleMillis, int futureBuckets) {
+            this.lock = new StampedLock();
+            this.maxKeys = maxKeys;
+            this.idleMillis = idleMillis;
+            this.futureBuckets = futureBuckets;
+            this.maxCapacity = Integer.highestOneBit(maxKeys * 2 - 1) << 1;
+            allocate(Math.min(16, maxCapacity));
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            windows = new SlidingWindow[capacity];
+            lastTimestamps = new long[capacity];
+            size = 0;
+        }
+
+        SlidingWindow get(long key) {
+            int slot = find(key);
+            return keys[slot] == key ? windows[slot] : null;
+        }
+
+        boolean add(long key, double amount, long timestamp, long now) {
+            int slot = find(key);
+            if (keys[slot] != key) {
+                if (size == maxKeys) {
+                    evictIdle(now);
+                    if (size == maxKeys) {
+                        return false;
+                    }
+                } else if ((size + 1) * 2 > keys.length && keys.length < maxCapacity) {
+                    rehash(keys.length * 2, now, false);
+                }
+                slot = find(key);
+                keys[slot] = key;
+                windows[slot] = new SlidingWindow(BUCKET_COUNT, BUCKET_MS, futureBuckets, false, null);
+                size++;
+            }
+            windows[slot].add(amount, timestamp, now);
+            lastTimestamps[slot] = Math.max(lastTimestamps[slot], timestamp);
+            return true;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (keys[slot] != key && keys[slot] != NO_KEY) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Rebuilds the table without the values that are idle. Rebuilding is O(capacity), so a full segment
+         * only tries again after {@link #EVICTION_INTERVAL_MS}.
+         */
+        private void evictIdle(long now) {
+            if (now - lastEviction < EVICTION_INTERVAL_MS) {
+                return;
+            }
+            lastEviction = now;
+            rehash(keys.length, now, true);
+        }
+
+        private void rehash(int capacity, long now, boolean evictIdle) {
+            long[] oldKeys = keys;
+            SlidingWindow[] oldWindows = windows;
+            long[] oldTimestamps = lastTimestamps;
+            allocate(capacity);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == NO_KEY || evictIdle && now - oldTimestamps[i] >= idleMillis) {
+                    continue;
+                }
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                windows[slot] = oldWindows[i];
+                lastTimestamps[slot] = oldTimestamps[i];
+                size++;
+            }
+        }
+    }
+}
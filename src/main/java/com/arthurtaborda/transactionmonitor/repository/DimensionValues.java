@@ -0,0 +1,20 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+/**
+ * The {@link Dimension} values of a transaction
+ */
+public interface DimensionValues {
+
+    /**
+     * @return the key of the value, see {@link DimensionStatistics#key(String)}, or
+     * {@link DimensionStatistics#NO_KEY} if the transaction has no value for the dimension
+     */
+    long getDimensionKey(Dimension dimension);
+
+    /**
+     * Only called when the value itself is needed, so implementations can build it lazily
+     *
+     * @return the value, or <tt>null</tt> if the transaction has no value for the dimension
+     */
+    String getDimensionValue(Dimension dimension);
+}
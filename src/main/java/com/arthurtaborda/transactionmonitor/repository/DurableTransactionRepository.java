@@ -0,0 +1,122 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes every transaction added to another repository to a {@link TransactionLog}, and replays the log into it
+ * on creation, so a restart does not lose the last minute of statistics.
+ * <p>
+ * Transactions are logged once the repository accepted them, so those it refused for being overloaded are not
+ * replayed when they are sent again. A batch is logged only if the repository did not throw, a repository that
+ * adds part of a batch before reporting it is overloaded loses that part on a restart.
+ * <p>
+ * The log is flushed to the disk every {@link #SYNC_INTERVAL_MS} by the {@link MaintenanceScheduler}, one flush
+ * for all the transactions added in between, and its expired segments are reclaimed every
+ * {@link #RECLAIM_INTERVAL_MS}. A crash of the process loses nothing, a crash of the machine loses at most the transactions
+ * of the last interval. Only transactions from the last 60 seconds can be replayed, so the longer windows
+ * of the {@link BucketedTransactionRepository} start over.
+ */
+public class DurableTransactionRepository implements TransactionRepository {
+
+    private static final Logger LOGGER = getLogger(DurableTransactionRepository.class.getName());
+    private static final Latency FORCES = Metrics.latency("transaction_log_force_seconds", "",
+                                                          "Time spent flushing the transaction log to the disk");
+
+    private static final int SYNC_INTERVAL_MS = 10;
+    private static final int RECLAIM_INTERVAL_MS = 1000;
+    private static final int SEGMENT_RECORDS = 65536;
+
+    private final TransactionRepository repository;
+    private final TransactionLog log;
+    private final long allowedSkewMillis;
+    private final ScheduledFuture<?> forceTimer;
+    private final ScheduledFuture<?> reclaimTimer;
+
+    public DurableTransactionRepository(MaintenanceScheduler scheduler, TransactionRepository repository,
+                                        Path directory) throws IOException {
+        this(scheduler, repository, directory, 0);
+    }
+
+    /**
+     * @param allowedSkewMillis how far in the future timestamps are logged, should be the skew allowed by
+     *                          <tt>repository</tt>
+     */
+    public DurableTransactionRepository(MaintenanceScheduler scheduler, TransactionRepository repository,
+                                        Path directory, long allowedSkewMillis) throws IOException {
+        this.allowedSkewMillis = allowedSkewMillis;
+        this.repository = repository;
+        this.log = new TransactionLog(directory, SEGMENT_RECORDS, Transaction.WINDOW_MS);
+
+        long start = currentTimeMillis();
+        int replayed = log.replay(repository, start);
+        LOGGER.info("Replayed " + replayed + " transactions from " + directory + " in "
+                    + (currentTimeMillis() - start) + "ms");
+
+        this.forceTimer = scheduler.scheduleAtFixedRate("log_force", SYNC_INTERVAL_MS, () -> {
+            long forceStart = System.nanoTime();
+            log.force();
+            FORCES.recordSince(forceStart);
+        });
+        this.reclaimTimer = scheduler.scheduleAtFixedRate("log_reclaim", RECLAIM_INTERVAL_MS,
+                                                          () -> log.reclaim(currentTimeMillis()));
+    }
+
+    /**
+     * Stops the timers and flushes what is left of the log
+     */
+    public void stop() {
+        forceTimer.cancel(false);
+        reclaimTimer.cancel(false);
+        log.force();
+    }
+
+    @Override
+    public boolean addTransaction(Transaction transaction) {
+        return addTransaction(transaction.getAmount(), transaction.getTimestamp());
+    }
+
+    @Override
+    public boolean addTransaction(double amount, long timestamp) {
+        boolean added = repository.addTransaction(amount, timestamp);
+        if (added) {
+            log.append(amount, timestamp);
+        }
+        return added;
+    }
+
+    @Override
+    public int addTransactions(double[] amounts, long[] timestamps, int length) {
+        long now = currentTimeMillis();
+        int added = repository.addTransactions(amounts, timestamps, length);
+        for (int i = 0; i < length && added > 0; i++) {
+            if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis, now)) {
+                log.append(amounts[i], timestamps[i]);
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public TransactionStatistics getStatistics() {
+        return repository.getStatistics();
+    }
+
+    @Override
+    public TransactionStatistics getStatistics(long windowMillis) {
+        return repository.getStatistics(windowMillis);
+    }
+
+    @Override
+    public TransactionStatistics getStatistics(long fromMillis, long toMillis) {
+        return repository.getStatistics(fromMillis, toMillis);
+    }
+}
@@ -0,0 +1,30 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+/**
+ * A value of a {@link Dimension} with the number of transactions it had. The count can be overestimated
+ * by up to <tt>error</tt>.
+ */
+public class HeavyHitter {
+
+    private final String value;
+    private final long count;
+    private final long error;
+
+    HeavyHitter(String value, long count, long error) {
+        this.value = value;
+        this.count = count;
+        this.error = error;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getError() {
+        return error;
+    }
+}
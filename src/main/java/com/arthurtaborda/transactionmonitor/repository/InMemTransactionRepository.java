@@ -1,61 +1,74 @@
 package com.arthurtaborda.transactionmonitor.repository;
 
-import io.vertx.core.Vertx;
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
 import org.slf4j.Logger;
 
 import java.util.Collection;
+import java.util.DoubleSummaryStatistics;
 import java.util.LinkedList;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.StampedLock;
 
+import static java.lang.System.currentTimeMillis;
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class InMemTransactionRepository implements TransactionRepository {
 
     private static final Logger LOGGER = getLogger(InMemTransactionRepository.class.getName());
+    private static final Latency TRANSACTIONS_LOCK_WAITS = Metrics.lockWaits("inmem_transactions");
+    private static final Latency STATISTICS_LOCK_WAITS = Metrics.lockWaits("inmem_statistics");
 
     private static final int TIMER_INTERVAL_MS = 400;
 
     private final StampedLock statisticsLock;
     private final StampedLock transactionsLock;
 
-    private final Vertx vertx;
+    private final long allowedSkewMillis;
 
     private TransactionStatistics statistics;
-    private long timer;
+    private final ScheduledFuture<?> timer;
     private Collection<Transaction> transactions;
 
-    public InMemTransactionRepository(Vertx vertx) {
+    public InMemTransactionRepository(MaintenanceScheduler scheduler) {
+        this(scheduler, 0);
+    }
+
+    /**
+     * @param scheduler         scheduler of the ticks removing old transactions and generating the statistics
+     * @param allowedSkewMillis how far in the future timestamps are accepted, those transactions are only
+     *                          counted in the statistics once their timestamp is reached
+     */
+    public InMemTransactionRepository(MaintenanceScheduler scheduler, long allowedSkewMillis) {
+        if (allowedSkewMillis < 0) {
+            throw new IllegalArgumentException("Allowed skew must not be negative: " + allowedSkewMillis);
+        }
+        this.allowedSkewMillis = allowedSkewMillis;
         this.statisticsLock = new StampedLock();
         this.transactionsLock = new StampedLock();
 
-        this.vertx = vertx;
         this.transactions = new LinkedList<>();
-        this.statistics = new TransactionStatistics();
+        this.statistics = new TransactionStatistics(new DoubleSummaryStatistics(), 1);
 
-        setTimer();
+        this.timer = scheduler.scheduleAtFixedRate("inmem", TIMER_INTERVAL_MS, () -> {
+            removeOld();
+            generateStatistics();
+        });
     }
 
     /**
-     * Stops any timer that might still be running
+     * Stops the ticks, the scheduler is left running
      */
     public void stop() {
-        vertx.cancelTimer(timer);
-    }
-
-    private void setTimer() {
-        timer = vertx.setTimer(TIMER_INTERVAL_MS, delay -> vertx.executeBlocking(future -> {
-            removeOld();
-            generateStatistics();
-            future.complete();
-        }, result -> setTimer()));
+        timer.cancel(false);
     }
 
     @Override
     public boolean addTransaction(Transaction transaction) {
-        boolean happenedInLastMinute = transaction.happenedInLastMinute();
+        boolean happenedInLastMinute = Transaction.happenedInLastMinute(transaction.getTimestamp(), allowedSkewMillis);
         if (happenedInLastMinute) {
             LOGGER.debug("Add transaction");
-            long writeLock = transactionsLock.writeLock();
+            long writeLock = Metrics.writeLock(transactionsLock, TRANSACTIONS_LOCK_WAITS);
             try {
                 transactions.add(transaction);
             } finally {
@@ -66,10 +79,27 @@ public class InMemTransactionRepository implements TransactionRepository {
         return happenedInLastMinute;
     }
 
+    @Override
+    public int addTransactions(double[] amounts, long[] timestamps, int length) {
+        int added = 0;
+        long writeLock = Metrics.writeLock(transactionsLock, TRANSACTIONS_LOCK_WAITS);
+        try {
+            for (int i = 0; i < length; i++) {
+                if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis)) {
+                    transactions.add(new Transaction(amounts[i], timestamps[i]));
+                    added++;
+                }
+            }
+        } finally {
+            transactionsLock.unlockWrite(writeLock);
+        }
+        return added;
+    }
+
     @Override
     public TransactionStatistics getStatistics() {
         LOGGER.debug("Get statistics");
-        long readLock = statisticsLock.readLock();
+        long readLock = Metrics.readLock(statisticsLock, STATISTICS_LOCK_WAITS);
         try {
             return statistics;
         } finally {
@@ -80,12 +110,18 @@ public class InMemTransactionRepository implements TransactionRepository {
     private void generateStatistics() {
         LOGGER.debug("Generate statistics");
 
-        long writeLock = statisticsLock.writeLock();
-        long readLock = transactionsLock.readLock();
+        long writeLock = Metrics.writeLock(statisticsLock, STATISTICS_LOCK_WAITS);
+        long readLock = Metrics.readLock(transactionsLock, TRANSACTIONS_LOCK_WAITS);
         try {
-            statistics = new TransactionStatistics(transactions.stream()
-                                                               .mapToDouble(Transaction::getAmount)
-                                                               .summaryStatistics());
+            long now = currentTimeMillis();
+            TransactionStatistics generated = new TransactionStatistics(transactions.stream()
+                                                                                    .filter(t -> t.getTimestamp() <= now)
+                                                                                    .mapToDouble(Transaction::getAmount)
+                                                                                    .summaryStatistics(),
+                                                                        statistics.getVersion() + 1);
+            if (!generated.hasSameValues(statistics)) {
+                statistics = generated;
+            }
         } finally {
             statisticsLock.unlockWrite(writeLock);
             transactionsLock.unlockRead(readLock);
@@ -93,9 +129,9 @@ public class InMemTransactionRepository implements TransactionRepository {
     }
 
     private void removeOld() {
-        long writeLock = transactionsLock.writeLock();
+        long writeLock = Metrics.writeLock(transactionsLock, TRANSACTIONS_LOCK_WAITS);
         try {
-            transactions.removeIf(t -> !t.happenedInLastMinute());
+            transactions.removeIf(t -> !Transaction.happenedInLastMinute(t.getTimestamp(), allowedSkewMillis));
         } finally {
             transactionsLock.unlockWrite(writeLock);
         }
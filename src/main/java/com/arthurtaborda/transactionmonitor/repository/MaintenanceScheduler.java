@@ -0,0 +1,77 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import org.slf4j.Logger;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs the periodic maintenance of the repositories, such as removing old transactions, on a thread of its own
+ * instead of the shared Vert.x worker pool.
+ * <p>
+ * Tasks run at a fixed rate: the n-th tick is due n periods after the first one, whatever the previous ticks
+ * took, so a slow tick does not push every later one back. Ticks of the same task never overlap, a tick that
+ * runs longer than the period delays the next one, which then runs right away.
+ * <p>
+ * For every task, the time each tick started after it was due and the time it took are recorded as the
+ * <tt>maintenance_tick_drift_seconds</tt> and <tt>maintenance_tick_seconds</tt> metrics, labeled with the task.
+ */
+public class MaintenanceScheduler {
+
+    private static final Logger LOGGER = getLogger(MaintenanceScheduler.class.getName());
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param virtualThreads <tt>true</tt> to run the ticks on a virtual thread, if the JVM supports them
+     */
+    public MaintenanceScheduler(boolean virtualThreads) {
+        this.executor = new ScheduledThreadPoolExecutor(1, VirtualThreads.factory("maintenance-", virtualThreads));
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @param task         name of the task, used as the <tt>task</tt> label of the metrics
+     * @param periodMillis time between the start of two ticks
+     * @return the scheduled task, to be cancelled when it is not needed anymore
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(String task, long periodMillis, Runnable tick) {
+        Latency drift = Metrics.latency("maintenance_tick_drift_seconds", "task=\"" + task + "\"",
+                                        "Time between the moment a maintenance tick was due and the moment it started");
+        Latency duration = Metrics.latency("maintenance_tick_seconds", "task=\"" + task + "\"",
+                                           "Time spent running a maintenance tick");
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        long firstNanos = System.nanoTime() + periodNanos;
+        return executor.scheduleAtFixedRate(new Runnable() {
+
+            private long ticks;
+
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                drift.record(Math.max(0, start - (firstNanos + ticks++ * periodNanos)));
+                try {
+                    tick.run();
+                } catch (RuntimeException e) {
+                    // an exception would cancel every later tick
+                    LOGGER.error("Maintenance tick of " + task + " failed", e);
+                } finally {
+                    duration.recordSince(start);
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels every task and lets the running tick finish
+     */
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,152 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with a relative accuracy of 1%, in the style of DDSketch.
+ * <p>
+ * Amounts are counted in logarithmic bins, so any quantile is estimated within 1% of its real value while
+ * the memory is bounded by the number of bins, whatever the number of transactions. Amounts below one cent
+ * are counted as zero and amounts beyond a billion, infinite ones included, in the last bin. As the bins only hold counts, sketches
+ * can be merged and subtracted exactly, which lets a window add and expire buckets incrementally.
+ * <p>
+ * This class is not thread safe.
+ */
+class QuantileSketch {
+
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_INDEXABLE = 0.01;
+    private static final double MAX_INDEXABLE = 1e9;
+
+    private static final int MIN_INDEX = index(MIN_INDEXABLE);
+    private static final int BIN_COUNT = index(MAX_INDEXABLE) - MIN_INDEX + 1;
+
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+    private long count;
+
+    void add(double amount) {
+        double magnitude = Math.abs(amount);
+        if (magnitude < MIN_INDEXABLE) {
+            zeroCount++;
+        } else if (amount > 0) {
+            positive.add(bin(magnitude), 1);
+        } else {
+            negative.add(bin(magnitude), 1);
+        }
+        count++;
+    }
+
+    void merge(QuantileSketch sketch) {
+        positive.merge(sketch.positive, 1);
+        negative.merge(sketch.negative, 1);
+        zeroCount += sketch.zeroCount;
+        count += sketch.count;
+    }
+
+    /**
+     * Removes the amounts counted by a sketch that was merged into this one
+     */
+    void subtract(QuantileSketch sketch) {
+        positive.merge(sketch.positive, -1);
+        negative.merge(sketch.negative, -1);
+        zeroCount -= sketch.zeroCount;
+        count -= sketch.count;
+    }
+
+    void clear() {
+        positive.clear();
+        negative.clear();
+        zeroCount = 0;
+        count = 0;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return an amount within 1% of the amount at that quantile, or 0 if the sketch is empty
+     */
+    double quantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) (quantile * (count - 1));
+
+        long seen = 0;
+        for (int bin = negative.highest; bin >= negative.lowest; bin--) {
+            seen += negative.counts[bin];
+            if (seen > rank) {
+                return -value(bin);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int bin = positive.lowest; bin <= positive.highest; bin++) {
+            seen += positive.counts[bin];
+            if (seen > rank) {
+                return value(bin);
+            }
+        }
+        return positive.highest >= 0 ? value(positive.highest) : 0;
+    }
+
+    private static int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    private static int bin(double magnitude) {
+        // the index of an infinite magnitude saturates and would overflow once shifted by MIN_INDEX
+        if (!(magnitude < MAX_INDEXABLE)) {
+            return BIN_COUNT - 1;
+        }
+        return Math.min(index(magnitude) - MIN_INDEX, BIN_COUNT - 1);
+    }
+
+    private static double value(int bin) {
+        return 2 * Math.exp((bin + MIN_INDEX) * LOG_GAMMA) / (GAMMA + 1);
+    }
+
+    /**
+     * Counts per bin. The array is only allocated on the first add, and the range of bins that were used is
+     * tracked so clearing and merging only touch that range.
+     */
+    private static class Bins {
+
+        private long[] counts;
+        private int lowest = BIN_COUNT;
+        private int highest = -1;
+
+        private void add(int bin, long count) {
+            if (counts == null) {
+                counts = new long[BIN_COUNT];
+            }
+            counts[bin] += count;
+            lowest = Math.min(lowest, bin);
+            highest = Math.max(highest, bin);
+        }
+
+        private void merge(Bins bins, long sign) {
+            for (int bin = bins.lowest; bin <= bins.highest; bin++) {
+                if (bins.counts[bin] != 0) {
+                    add(bin, sign * bins.counts[bin]);
+                }
+            }
+        }
+
+        private void clear() {
+            if (highest >= lowest) {
+                Arrays.fill(counts, lowest, highest + 1, 0);
+            }
+            lowest = BIN_COUNT;
+            highest = -1;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import com.arthurtaborda.transactionmonitor.metrics.Counter;
+import com.arthurtaborda.transactionmonitor.metrics.Latency;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import org.slf4j.Logger;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Puts transactions in a bounded queue and returns, a dedicated thread takes them out in batches of up to
+ * {@link #DRAIN_BATCH} and adds them to another repository. The event loops never wait for the lock of the
+ * repository, only for the short lock of the queue, and the repository pays for its lock once per batch.
+ * <p>
+ * When the queue does not have room for all the transactions of a call, none of them are queued and a
+ * {@link RepositoryOverloadedException} is thrown, so the load is shed instead of making every caller wait.
+ * <p>
+ * Transactions are only checked against the window when they are queued. The statistics include them once the
+ * thread added them, which is usually well under a millisecond later. When the repository fails to add a batch,
+ * the batch is lost, logged and counted in <tt>ingest_queue_failed_total</tt>, and the thread goes on with the
+ * next one.
+ */
+public class QueuedTransactionRepository implements TransactionRepository {
+
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    static final int DRAIN_BATCH = 1024;
+    static final long RETRY_AFTER_MS = 1000;
+
+    private static final Logger LOGGER = getLogger(QueuedTransactionRepository.class.getName());
+
+    private static final Latency DRAINS = Metrics.latency("ingest_queue_drain_seconds", "",
+                                                          "Time spent adding a batch of queued transactions");
+    private static final Counter EXPIRED = Metrics.counter("ingest_queue_expired_total",
+                                                           "Transactions that left the window while they were queued");
+    private static final Counter FAILED = Metrics.counter("ingest_queue_failed_total",
+                                                          "Queued transactions lost because adding them failed");
+
+    private final TransactionRepository repository;
+    private final long allowedSkewMillis;
+    private final int capacity;
+
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final double[] amounts;
+    private final long[] timestamps;
+    private int head;
+    private int size;
+    private boolean running;
+
+    private final double[] drainedAmounts;
+    private final long[] drainedTimestamps;
+    private final Thread consumer;
+
+    public QueuedTransactionRepository(TransactionRepository repository) {
+        this(repository, DEFAULT_CAPACITY, 0);
+    }
+
+    /**
+     * @param capacity          maximum number of transactions waiting to be added
+     * @param allowedSkewMillis how far in the future timestamps are queued, should be the skew allowed by
+     *                          <tt>repository</tt>
+     */
+    public QueuedTransactionRepository(TransactionRepository repository, int capacity, long allowedSkewMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.repository = repository;
+        this.allowedSkewMillis = allowedSkewMillis;
+        this.capacity = capacity;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.amounts = new double[capacity];
+        this.timestamps = new long[capacity];
+        this.drainedAmounts = new double[DRAIN_BATCH];
+        this.drainedTimestamps = new long[DRAIN_BATCH];
+        this.running = true;
+        this.consumer = new Thread(this::drain, "transaction-ingest");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+        Metrics.gauge("ingest_queue_transactions", "", "Transactions waiting in the ingest queue", this::size);
+    }
+
+    /**
+     * Stops taking transactions, and waits for the ones already queued to be added
+     */
+    public void stop() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        consumer.join();
+    }
+
+    @Override
+    public boolean addTransaction(Transaction transaction) {
+        return addTransaction(transaction.getAmount(), transaction.getTimestamp());
+    }
+
+    /**
+     * @return <tt>true</tt> if the transaction was queued
+     * @throws RepositoryOverloadedException if the queue is full
+     */
+    @Override
+    public boolean addTransaction(double amount, long timestamp) {
+        if (!Transaction.happenedInLastMinute(timestamp, allowedSkewMillis)) {
+            return false;
+        }
+        lock.lock();
+        try {
+            checkRoom(1);
+            put(amount, timestamp);
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of transactions that were queued
+     * @throws RepositoryOverloadedException if the queue does not have room for all of them
+     */
+    @Override
+    public int addTransactions(double[] amounts, long[] timestamps, int length) {
+        // the room is checked for the transactions counted here, so the same ones must be queued below
+        long now = currentTimeMillis();
+        int live = 0;
+        for (int i = 0; i < length; i++) {
+            if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis, now)) {
+                live++;
+            }
+        }
+        if (live == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            checkRoom(live);
+            for (int i = 0; i < length; i++) {
+                if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis, now)) {
+                    put(amounts[i], timestamps[i]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return live;
+    }
+
+    @Override
+    public TransactionStatistics getStatistics() {
+        return repository.getStatistics();
+    }
+
+    @Override
+    public TransactionStatistics getStatistics(long windowMillis) {
+        return repository.getStatistics(windowMillis);
+    }
+
+    @Override
+    public TransactionStatistics getStatistics(long fromMillis, long toMillis) {
+        return repository.getStatistics(fromMillis, toMillis);
+    }
+
+    /**
+     * @return number of transactions waiting to be added
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkRoom(int transactions) {
+        if (!running || capacity - size < transactions) {
+            throw new RepositoryOverloadedException("Ingest queue is full", RETRY_AFTER_MS);
+        }
+    }
+
+    private void put(double amount, long timestamp) {
+        int tail = head + size;
+        if (tail >= capacity) {
+            tail -= capacity;
+        }
+        amounts[tail] = amount;
+        timestamps[tail] = timestamp;
+        if (size++ == 0) {
+            notEmpty.signal();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            int drained;
+            lock.lock();
+            try {
+                while (size == 0) {
+                    if (!running) {
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                drained = take();
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            try {
+                int added = repository.addTransactions(drainedAmounts, drainedTimestamps, drained);
+                EXPIRED.add(drained - added);
+            } catch (RuntimeException e) {
+                // the thread must survive, or the queue fills up and every later call is shed
+                FAILED.add(drained);
+                LOGGER.error("Could not add " + drained + " queued transactions", e);
+            } finally {
+                DRAINS.recordSince(start);
+            }
+        }
+    }
+
+    /**
+     * Copies up to {@link #DRAIN_BATCH} transactions from the head of the queue, in at most two copies since the
+     * queue can wrap around the end of the arrays
+     */
+    private int take() {
+        int drained = Math.min(size, DRAIN_BATCH);
+        int first = Math.min(drained, capacity - head);
+        System.arraycopy(amounts, head, drainedAmounts, 0, first);
+        System.arraycopy(timestamps, head, drainedTimestamps, 0, first);
+        System.arraycopy(amounts, 0, drainedAmounts, first, drained - first);
+        System.arraycopy(timestamps, 0, drainedTimestamps, first, drained - first);
+        head = (head + drained) % capacity;
+        size -= drained;
+        return drained;
+    }
+}
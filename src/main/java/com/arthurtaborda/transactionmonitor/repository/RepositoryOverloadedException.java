@@ -0,0 +1,22 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+/**
+ * Thrown when a repository can not take more transactions for now. None of the transactions of the call were
+ * added, and the caller should try again after {@link #getRetryAfterMillis()}.
+ */
+public class RepositoryOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public RepositoryOverloadedException(String message, long retryAfterMillis) {
+        // thrown for every request shed under overload, so it does not pay for a stack trace
+        super(message, null, false, false);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,276 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import com.arthurtaborda.transactionmonitor.metrics.Counter;
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the last 60 seconds in a {@link SlidingWindow} owned by a single writer thread, in the style of the
+ * LMAX disruptor, so adding transactions never takes a lock.
+ * <p>
+ * Callers claim slots of a preallocated ring with a compare and set on the cursor, write the amounts and
+ * timestamps into the slots and publish every slot by storing its sequence. The writer thread applies the
+ * published slots in sequence order to the window, in batches of whatever is available, and after every batch
+ * publishes an immutable snapshot of the statistics. Only the snapshots are allocated, never the transactions.
+ * <p>
+ * {@link #getStatistics()} waits for the snapshot that includes every transaction claimed before the call, so a
+ * caller reads its own writes, usually after a few microseconds. The wait is bounded by {@link #MAX_WAIT_MS}
+ * since the caller may be an event loop: if the writer is that far behind, the last snapshot is returned and
+ * counted in <tt>writer_stale_statistics_total</tt>.
+ * <p>
+ * When the ring is full because the writer fell behind, nothing is claimed and a
+ * {@link RepositoryOverloadedException} is thrown, the callers are event loops and must not wait.
+ * Only the 60 seconds window is kept.
+ * <p>
+ * Stopping closes the cursor, so a claim racing the stop either gets a sequence the writer applies before it
+ * exits, or fails.
+ */
+public class SingleWriterTransactionRepository implements TransactionRepository {
+
+    public static final int DEFAULT_RING_SIZE = 65536;
+
+    static final long RETRY_AFTER_MS = 100;
+    static final long MAX_WAIT_MS = 10;
+
+    private static final Logger LOGGER = getLogger(SingleWriterTransactionRepository.class.getName());
+    private static final Counter STALE = Metrics.counter("writer_stale_statistics_total",
+                                                         "Statistics returned without every claimed transaction");
+
+    private static final int BUCKET_COUNT = 60;
+    private static final int MAX_BATCH = 4096;
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 50_000;
+    private static final long CLOSED = Long.MAX_VALUE;
+
+    private final long allowedSkewMillis;
+    private final long bucketMillis;
+    private final SlidingWindow window;
+
+    private final int ringSize;
+    private final int mask;
+    private final double[] amounts;
+    private final long[] timestamps;
+    private final AtomicLongArray published;
+    private final AtomicLong cursor;
+    private final AtomicLong applied;
+
+    private final Thread writer;
+    private volatile boolean running;
+    /**
+     * Last sequence claimed before the cursor was closed, only read once <tt>running</tt> is <tt>false</tt>
+     */
+    private volatile long lastClaimed;
+    private volatile Snapshot snapshot;
+
+    public SingleWriterTransactionRepository() {
+        this(DEFAULT_RING_SIZE, 0);
+    }
+
+    /**
+     * @param ringSize          number of slots of the ring, a power of two larger than the largest batch added
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     */
+    public SingleWriterTransactionRepository(int ringSize, long allowedSkewMillis) {
+        if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two: " + ringSize);
+        }
+        this.allowedSkewMillis = allowedSkewMillis;
+        this.bucketMillis = Transaction.WINDOW_MS / BUCKET_COUNT;
+        this.window = new SlidingWindow(BUCKET_COUNT, bucketMillis,
+                                        SlidingWindow.futureBuckets(allowedSkewMillis, bucketMillis), true, null);
+        this.ringSize = ringSize;
+        this.mask = ringSize - 1;
+        this.amounts = new double[ringSize];
+        this.timestamps = new long[ringSize];
+        this.published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            published.set(i, -1);
+        }
+        this.cursor = new AtomicLong(-1);
+        this.applied = new AtomicLong(-1);
+        this.lastClaimed = -1;
+
+        long now = currentTimeMillis();
+        this.snapshot = new Snapshot(-1, now / bucketMillis, window.statistics(now));
+        this.running = true;
+        this.writer = new Thread(this::write, "transaction-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Metrics.gauge("writer_ring_transactions", "", "Transactions published to the ring and not applied yet",
+                      () -> claimed() - applied.get());
+    }
+
+    /**
+     * Stops the writer thread once it applied every transaction claimed so far
+     */
+    public void stop() throws InterruptedException {
+        // no claim succeeds once the cursor is closed, so the writer knows the last sequence to apply
+        lastClaimed = cursor.getAndSet(CLOSED);
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+    }
+
+    @Override
+    public boolean addTransaction(Transaction transaction) {
+        return addTransaction(transaction.getAmount(), transaction.getTimestamp());
+    }
+
+    /**
+     * @throws RepositoryOverloadedException if the ring is full
+     */
+    @Override
+    public boolean addTransaction(double amount, long timestamp) {
+        if (!Transaction.happenedInLastMinute(timestamp, allowedSkewMillis)) {
+            return false;
+        }
+        long sequence = claim(1);
+        publish(sequence, amount, timestamp);
+        return true;
+    }
+
+    /**
+     * @throws RepositoryOverloadedException if the ring does not have room for all the transactions
+     */
+    @Override
+    public int addTransactions(double[] amounts, long[] timestamps, int length) {
+        // both passes must agree on every transaction: a slot claimed and never published stops the writer, and
+        // a slot published without being claimed overwrites the slot of another caller
+        long now = currentTimeMillis();
+        int live = 0;
+        for (int i = 0; i < length; i++) {
+            if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis, now)) {
+                live++;
+            }
+        }
+        if (live == 0) {
+            return 0;
+        }
+
+        long sequence = claim(live) - live + 1;
+        for (int i = 0; i < length; i++) {
+            if (Transaction.happenedInLastMinute(timestamps[i], allowedSkewMillis, now)) {
+                publish(sequence++, amounts[i], timestamps[i]);
+            }
+        }
+        return live;
+    }
+
+    @Override
+    public TransactionStatistics getStatistics() {
+        LOGGER.debug("Get statistics");
+        long claimed = claimed();
+        long bucket = currentTimeMillis() / bucketMillis;
+        Snapshot current = snapshot;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS);
+        while ((current.sequence < claimed || current.bucket < bucket) && running) {
+            if (System.nanoTime() - deadline > 0) {
+                STALE.increment();
+                break;
+            }
+            Thread.yield();
+            current = snapshot;
+        }
+        return current.statistics;
+    }
+
+    private long claimed() {
+        long claimed = cursor.get();
+        return claimed == CLOSED ? lastClaimed : claimed;
+    }
+
+    /**
+     * @return the last of the <tt>slots</tt> sequences claimed
+     */
+    private long claim(int slots) {
+        if (slots > ringSize) {
+            throw new IllegalArgumentException("Batch larger than the ring: " + slots);
+        }
+        while (true) {
+            long current = cursor.get();
+            if (current == CLOSED) {
+                throw new RepositoryOverloadedException("Writer is stopped", RETRY_AFTER_MS);
+            }
+            long next = current + slots;
+            if (next - applied.get() > ringSize) {
+                throw new RepositoryOverloadedException("Ring is full", RETRY_AFTER_MS);
+            }
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private void publish(long sequence, double amount, long timestamp) {
+        int slot = (int) sequence & mask;
+        amounts[slot] = amount;
+        timestamps[slot] = timestamp;
+        // ordered after the writes of the slot, the writer reads the slot once it sees the sequence
+        published.lazySet(slot, sequence);
+    }
+
+    private void write() {
+        long next = applied.get() + 1;
+        int idle = 0;
+        while (running || next <= lastClaimed) {
+            long now = currentTimeMillis();
+            long first = next;
+            while (next - first < MAX_BATCH && published.get((int) next & mask) == next) {
+                int slot = (int) next & mask;
+                window.add(amounts[slot], timestamps[slot], now);
+                next++;
+            }
+
+            if (next > first) {
+                applied.lazySet(next - 1);
+                snapshot = new Snapshot(next - 1, now / bucketMillis, window.statistics(now));
+                idle = 0;
+            } else if (now / bucketMillis != snapshot.bucket) {
+                snapshot = new Snapshot(next - 1, now / bucketMillis, window.statistics(now));
+            } else {
+                idle = await(idle);
+            }
+        }
+    }
+
+    /**
+     * Spins, then yields, then parks for a short while, so an idle writer does not burn a core and a busy one
+     * does not pay for waking up
+     */
+    private static int await(int idle) {
+        if (idle < SPINS) {
+            return idle + 1;
+        }
+        if (idle < SPINS + YIELDS) {
+            Thread.yield();
+            return idle + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return idle;
+    }
+
+    /**
+     * Statistics of the window after applying the transactions up to <tt>sequence</tt>, at <tt>bucket</tt>
+     */
+    private static class Snapshot {
+
+        private final long sequence;
+        private final long bucket;
+        private final TransactionStatistics statistics;
+
+        private Snapshot(long sequence, long bucket, TransactionStatistics statistics) {
+            this.sequence = sequence;
+            this.bucket = bucket;
+            this.statistics = statistics;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+/**
+ * Incremental aggregate over a window of time split into buckets.
+ * <p>
+ * The totals of the window are updated on every add, and buckets are expired lazily whenever the
+ * window is moved forward, so reading the statistics never scans transactions. Min and max can not be
+ * subtracted, they are only recomputed from the buckets when an expired bucket held one of them.
+ * <p>
+ * A window can roll its expired buckets up into a parent window with coarser buckets, e.g. seconds into
+ * minutes, so longer windows are served from the same transactions without keeping them twice, and can also
+ * append them to a {@link StatisticsArchive} so they are kept after leaving every window.
+ * <p>
+ * Every change to the window, from an add or from buckets expiring, increments its version. The statistics are
+ * only rebuilt when the version changed since they were last read.
+ * <p>
+ * To tolerate clock skew, the ring can keep a few buckets ahead of the window. Transactions stamped slightly in the
+ * future are added to those pending buckets, which are left out of the totals and join them in one merge when the
+ * window reaches them, so adding stays O(1) and a transaction is not counted before the start of its bucket.
+ * <p>
+ * This class is not thread safe.
+ */
+class SlidingWindow {
+
+    private final StatisticsBucket[] buckets;
+    private final int bucketCount;
+    private final int futureBuckets;
+    private final long bucketMillis;
+    private final SlidingWindow parent;
+    private StatisticsArchive archive;
+
+    private long head;
+    private final StatisticsBucket totals;
+    private boolean extremesStale;
+    private long version;
+    private TransactionStatistics snapshot;
+
+    SlidingWindow(int bucketCount, long bucketMillis) {
+        this(bucketCount, bucketMillis, false, null);
+    }
+
+    /**
+     * @param quantiles <tt>true</tt> to keep a {@link QuantileSketch} per bucket and for the whole window
+     * @param parent    window receiving the buckets that expire from this one, or <tt>null</tt>
+     */
+    SlidingWindow(int bucketCount, long bucketMillis, boolean quantiles, SlidingWindow parent) {
+        this(bucketCount, bucketMillis, 0, quantiles, parent);
+    }
+
+    /**
+     * @param futureBuckets number of buckets after the end of the window that accept transactions, see
+     *                      {@link #futureBuckets(long, long)}
+     */
+    SlidingWindow(int bucketCount, long bucketMillis, int futureBuckets, boolean quantiles, SlidingWindow parent) {
+        this.bucketCount = bucketCount;
+        this.futureBuckets = futureBuckets;
+        this.bucketMillis = bucketMillis;
+        this.parent = parent;
+        this.buckets = new StatisticsBucket[bucketCount + futureBuckets];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new StatisticsBucket(quantiles);
+        }
+        this.totals = new StatisticsBucket(quantiles);
+        clear();
+        this.version = 1;
+    }
+
+    /**
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     * @return the number of buckets of <tt>bucketMillis</tt> needed after the window to hold them
+     */
+    static int futureBuckets(long allowedSkewMillis, long bucketMillis) {
+        if (allowedSkewMillis < 0) {
+            throw new IllegalArgumentException("Allowed skew must not be negative: " + allowedSkewMillis);
+        }
+        return (int) ((allowedSkewMillis + bucketMillis - 1) / bucketMillis);
+    }
+
+    /**
+     * @param archive archive receiving the buckets that expire from this window, or <tt>null</tt>
+     */
+    void setArchive(StatisticsArchive archive) {
+        this.archive = archive;
+    }
+
+    long getWindowMillis() {
+        return bucketCount * bucketMillis;
+    }
+
+    /**
+     * @return <tt>true</tt> if the timestamp falls inside the window ending at <tt>now</tt>, or in one of the
+     * future buckets
+     */
+    boolean add(double amount, long timestamp, long now) {
+        StatisticsBucket bucket = bucketFor(timestamp, now);
+        if (bucket == null) {
+            return false;
+        }
+        bucket.add(amount);
+        if (bucket.getIndex() <= head) {
+            totals.add(amount);
+            version++;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the transactions aggregated in a bucket that started at <tt>timestamp</tt>
+     *
+     * @return <tt>true</tt> if the timestamp falls inside the window ending at <tt>now</tt>, or in one of the
+     * future buckets
+     */
+    boolean add(StatisticsBucket aggregate, long timestamp, long now) {
+        StatisticsBucket bucket = bucketFor(timestamp, now);
+        if (bucket == null) {
+            return false;
+        }
+        bucket.merge(aggregate);
+        if (bucket.getIndex() <= head) {
+            totals.merge(aggregate);
+            version++;
+        }
+        return true;
+    }
+
+    private StatisticsBucket bucketFor(long timestamp, long now) {
+        advance(now);
+
+        long index = timestamp / bucketMillis;
+        if (index > head + futureBuckets || index <= head - bucketCount) {
+            return null;
+        }
+
+        StatisticsBucket bucket = bucketAt(index);
+        if (bucket.getIndex() != index) {
+            bucket.reset(index);
+        }
+        return bucket;
+    }
+
+    /**
+     * Moves the window so it ends at <tt>now</tt>, adding the future buckets it reached to the totals and
+     * removing the buckets that fell out of it
+     */
+    void advance(long now) {
+        long newHead = now / bucketMillis;
+        if (newHead <= head) {
+            return;
+        }
+
+        long lastPending = Math.min(newHead, head + futureBuckets);
+        for (long index = head + 1; index <= lastPending; index++) {
+            StatisticsBucket bucket = bucketAt(index);
+            if (bucket.getIndex() == index && bucket.getCount() > 0) {
+                totals.merge(bucket);
+                version++;
+            }
+        }
+
+        // a future bucket the window went past entirely expires right after joining the totals
+        long firstExpired = head - bucketCount + 1;
+        long lastExpired = Math.min(newHead - bucketCount, head + futureBuckets);
+        head = newHead;
+        if (lastExpired - firstExpired >= buckets.length) {
+            lastExpired = firstExpired + buckets.length - 1;
+        }
+
+        for (long index = firstExpired; index <= lastExpired && totals.getCount() > 0; index++) {
+            StatisticsBucket bucket = bucketAt(index);
+            if (bucket.getIndex() == index && bucket.getCount() > 0) {
+                expire(bucket, now);
+            }
+        }
+    }
+
+    private void expire(StatisticsBucket bucket, long now) {
+        if (parent != null) {
+            parent.add(bucket, bucket.getIndex() * bucketMillis, now);
+        }
+        if (archive != null) {
+            archive.append(bucket, bucket.getIndex() * bucketMillis);
+        }
+        version++;
+
+        if (bucket.getCount() == totals.getCount()) {
+            // the other buckets of the window are empty, the future ones are not part of the totals
+            totals.reset(-1);
+            extremesStale = false;
+            bucket.reset(-1);
+            return;
+        }
+        totals.subtract(bucket);
+        if (bucket.getMin() <= totals.getMin() || bucket.getMax() >= totals.getMax()) {
+            extremesStale = true;
+        }
+        bucket.reset(-1);
+    }
+
+    private void clear() {
+        for (StatisticsBucket bucket : buckets) {
+            bucket.reset(-1);
+        }
+        totals.reset(-1);
+        extremesStale = false;
+    }
+
+    private void recomputeExtremes() {
+        totals.resetExtremes();
+        for (StatisticsBucket bucket : buckets) {
+            if (isLive(bucket)) {
+                totals.mergeExtremes(bucket);
+            }
+        }
+        extremesStale = false;
+    }
+
+    private boolean isLive(StatisticsBucket bucket) {
+        long index = bucket.getIndex();
+        return index > head - bucketCount && index <= head && bucket.getCount() > 0;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    TransactionStatistics statistics(long now) {
+        advance(now);
+        if (snapshot == null || snapshot.getVersion() != version) {
+            if (extremesStale) {
+                recomputeExtremes();
+            }
+            snapshot = totals.toStatistics(version);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Merges the whole window ending at <tt>now</tt> into <tt>target</tt>
+     */
+    void mergeInto(StatisticsBucket target, long now) {
+        advance(now);
+        if (extremesStale) {
+            recomputeExtremes();
+        }
+        target.merge(totals);
+    }
+
+    /**
+     * Merges the buckets ending after <tt>from</tt> of the window ending at <tt>now</tt> into <tt>target</tt>.
+     * The bucket holding <tt>from</tt> is merged whole, so the result has the resolution of one bucket.
+     */
+    void mergeInto(StatisticsBucket target, long from, long now) {
+        advance(now);
+        long fromIndex = from / bucketMillis;
+        for (StatisticsBucket bucket : buckets) {
+            if (isLive(bucket) && bucket.getIndex() >= fromIndex) {
+                target.merge(bucket);
+            }
+        }
+    }
+
+    private StatisticsBucket bucketAt(long index) {
+        return buckets[(int) (index % buckets.length)];
+    }
+}
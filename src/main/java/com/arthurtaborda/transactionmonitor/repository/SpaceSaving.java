@@ -0,0 +1,188 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import java.util.Arrays;
+
+/**
+ * Space-Saving summary of the most frequent keys of a stream, with a fixed number of counters.
+ * <p>
+ * A key that has a counter is counted exactly from then on. A new key takes over the counter with the lowest
+ * count when they are all in use, starting from that count, which is kept as the error of the new key.
+ * Any key that happened more often than <tt>total / capacity</tt> times is guaranteed to have a counter.
+ * <p>
+ * Counters are ordered in a min heap by count and found through an open addressing table, so adding a key
+ * takes constant time for a given capacity.
+ * <p>
+ * This class is not thread safe.
+ */
+class SpaceSaving {
+
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+    private final long[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final String[] values;
+    private int size;
+
+    private final int[] heap;
+    private final int[] heapPositions;
+
+    private final long[] tableKeys;
+    private final int[] tableCounters;
+    private final int tableMask;
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.values = new String[capacity];
+        this.heap = new int[capacity];
+        this.heapPositions = new int[capacity];
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.tableKeys = new long[tableSize];
+        this.tableCounters = new int[tableSize];
+        this.tableMask = tableSize - 1;
+        clear();
+    }
+
+    void clear() {
+        size = 0;
+        Arrays.fill(tableCounters, EMPTY);
+        Arrays.fill(values, null);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getKey(int counter) {
+        return keys[counter];
+    }
+
+    long getCount(int counter) {
+        return counts[counter];
+    }
+
+    long getError(int counter) {
+        return errors[counter];
+    }
+
+    String getValue(int counter) {
+        return values[counter];
+    }
+
+    /**
+     * @return the lowest count, or 0 while there are free counters
+     */
+    long getMinCount() {
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    /**
+     * Counts one occurrence of the key. The value is only read when the key gets a counter.
+     */
+    void add(long key, Dimension dimension, DimensionValues dimensionValues) {
+        int slot = find(key);
+        int counter = tableCounters[slot];
+        if (counter != EMPTY) {
+            counts[counter]++;
+            siftDown(heapPositions[counter]);
+            return;
+        }
+
+        boolean replacing = size == capacity;
+        if (replacing) {
+            counter = heap[0];
+            remove(keys[counter]);
+            slot = find(key);
+            errors[counter] = counts[counter];
+            counts[counter]++;
+        } else {
+            counter = size++;
+            counts[counter] = 1;
+            errors[counter] = 0;
+            move(counter, counter);
+        }
+        keys[counter] = key;
+        values[counter] = dimensionValues.getDimensionValue(dimension);
+        tableKeys[slot] = key;
+        tableCounters[slot] = counter;
+        if (replacing) {
+            siftDown(0);
+        } else {
+            siftUp(counter);
+        }
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (tableCounters[slot] != EMPTY && tableKeys[slot] != key) {
+            slot = (slot + 1) & tableMask;
+        }
+        return slot;
+    }
+
+    private int slot(long key) {
+        long mixed = (key ^ (key >>> 32)) * 0x9e3779b97f4a7c15L;
+        return (int) (mixed >>> 32) & tableMask;
+    }
+
+    /**
+     * Removes the key from the table, moving back the keys that probed past it
+     */
+    private void remove(long key) {
+        int hole = find(key);
+        tableCounters[hole] = EMPTY;
+        int slot = (hole + 1) & tableMask;
+        while (tableCounters[slot] != EMPTY) {
+            int home = slot(tableKeys[slot]);
+            // the key can fill the hole if the hole is between its home slot and where it is now
+            if (((slot - home) & tableMask) >= ((slot - hole) & tableMask)) {
+                tableKeys[hole] = tableKeys[slot];
+                tableCounters[hole] = tableCounters[slot];
+                tableCounters[slot] = EMPTY;
+                hole = slot;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    private void siftUp(int position) {
+        int counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[counter]) {
+                break;
+            }
+            move(heap[parent], position);
+            position = parent;
+        }
+        move(counter, position);
+    }
+
+    private void siftDown(int position) {
+        int counter = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[counter] <= counts[heap[child]]) {
+                break;
+            }
+            move(heap[child], position);
+            position = child;
+        }
+        move(counter, position);
+    }
+
+    private void move(int counter, int position) {
+        heap[position] = counter;
+        heapPositions[counter] = position;
+    }
+}
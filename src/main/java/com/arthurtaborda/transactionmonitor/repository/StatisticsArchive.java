@@ -0,0 +1,290 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Append only store of the statistics of every second that expired from the window, downsampled to minutes and
+ * hours, so the history can be queried long after the transactions are gone.
+ * <p>
+ * Each resolution is a file of fixed size records of {@link #RECORD_SIZE} bytes: the index of the second, minute or
+ * hour since the epoch, the count, the sum, the min and the max. Only periods with transactions have a record, and
+ * records are appended in index order, so a period is found with a binary search. A period is appended once the
+ * next one starts, and only then added to the period of the next resolution.
+ * <p>
+ * A range is answered with the coarsest records that fit inside it: whole hours from the hours file, the minutes
+ * around them from the minutes file and the seconds at the edges from the seconds file, so an hour long range
+ * reads at most a few hundred records whatever the number of transactions. Only appended periods are read, the
+ * second being aggregated is not part of the results yet.
+ * <p>
+ * The pages are left for the operating system to write, a crash of the machine can lose the last records. On
+ * opening, the minutes and hours not appended yet are rebuilt from the finer files.
+ */
+public class StatisticsArchive implements Closeable {
+
+    private static final Logger LOGGER = getLogger(StatisticsArchive.class.getName());
+
+    static final int RECORD_SIZE = 40;
+    private static final int READ_RECORDS = 1024;
+
+    private final Resolution seconds;
+    private final Resolution minutes;
+    private final Resolution hours;
+
+    public StatisticsArchive(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.hours = new Resolution(directory.resolve("hours.dat"), 3600, null);
+        this.minutes = new Resolution(directory.resolve("minutes.dat"), 60, hours);
+        this.seconds = new Resolution(directory.resolve("seconds.dat"), 1, minutes);
+        minutes.finer = seconds;
+        hours.finer = minutes;
+
+        hours.recover();
+        minutes.recover();
+        LOGGER.info("Opened statistics archive in " + directory + " with " + seconds.records + " seconds, "
+                    + minutes.records + " minutes and " + hours.records + " hours");
+    }
+
+    /**
+     * Archives a bucket that expired from the window. Buckets must be archived in the order of their start.
+     */
+    synchronized void append(StatisticsBucket bucket, long startMillis) {
+        if (bucket.getCount() > 0) {
+            seconds.add(Math.floorDiv(startMillis, 1000), bucket.getCount(), bucket.getSum(), bucket.getMin(),
+                        bucket.getMax());
+        }
+    }
+
+    /**
+     * @param fromMillis start of the range, inclusive
+     * @param toMillis   end of the range, exclusive
+     * @return statistics of the archived transactions in the range, with the resolution of one second: every
+     * second overlapping the range is included whole
+     */
+    public TransactionStatistics getStatistics(long fromMillis, long toMillis) {
+        if (fromMillis >= toMillis) {
+            throw new IllegalArgumentException("Range is empty: " + fromMillis + " to " + toMillis);
+        }
+        StatisticsBucket merged = new StatisticsBucket();
+        merge(hours, Math.floorDiv(fromMillis, 1000), Math.floorDiv(toMillis - 1, 1000) + 1, merged);
+        return merged.toStatistics();
+    }
+
+    /**
+     * Merges the seconds from <tt>from</tt> to <tt>to</tt>, exclusive, using the whole periods of
+     * <tt>resolution</tt> inside them and the finer resolutions for the rest
+     */
+    private void merge(Resolution resolution, long from, long to, StatisticsBucket target) {
+        if (from >= to) {
+            return;
+        }
+        long first = Math.floorDiv(from + resolution.seconds - 1, resolution.seconds);
+        long last = Math.min(Math.floorDiv(to, resolution.seconds), resolution.appendedBefore);
+        if (resolution.finer == null) {
+            resolution.read(first, last, target);
+            return;
+        }
+        if (first >= last) {
+            merge(resolution.finer, from, to, target);
+            return;
+        }
+        resolution.read(first, last, target);
+        merge(resolution.finer, from, first * resolution.seconds, target);
+        merge(resolution.finer, last * resolution.seconds, to, target);
+    }
+
+    /**
+     * Appends the second being aggregated, so it is not lost, and closes the files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        seconds.flush();
+        seconds.channel.close();
+        minutes.channel.close();
+        hours.channel.close();
+    }
+
+    /**
+     * One file of records, with the period being aggregated before it is appended
+     */
+    private static class Resolution {
+
+        private final FileChannel channel;
+        private final long seconds;
+        private final Resolution coarser;
+        private Resolution finer;
+
+        private final ByteBuffer record;
+        private final StatisticsBucket pending;
+        private long pendingIndex;
+        private long lastIndex;
+
+        /**
+         * Number of records in the file, written after the record is
+         */
+        private volatile long records;
+        /**
+         * Every period before this index is in the file or had no transactions
+         */
+        private volatile long appendedBefore;
+
+        Resolution(Path file, long seconds, Resolution coarser) throws IOException {
+            this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+            this.seconds = seconds;
+            this.coarser = coarser;
+            this.record = ByteBuffer.allocate(RECORD_SIZE);
+            this.pending = new StatisticsBucket();
+
+            long size = channel.size();
+            // a record cut short by a crash is dropped
+            channel.truncate(size - size % RECORD_SIZE);
+            this.records = size / RECORD_SIZE;
+            this.lastIndex = records == 0 ? Long.MIN_VALUE : readIndex(records - 1);
+            this.appendedBefore = records == 0 ? Long.MIN_VALUE : lastIndex + 1;
+        }
+
+        /**
+         * Aggregates again the records of the finer file that came after the last record of this one
+         */
+        void recover() {
+            long from = lastIndex == Long.MIN_VALUE ? Long.MIN_VALUE : (lastIndex + 1) * seconds / finer.seconds;
+            ByteBuffer buffer = ByteBuffer.allocate(READ_RECORDS * RECORD_SIZE);
+            long end = finer.records;
+            for (long position = finer.search(from); position < end; ) {
+                int read = finer.readRecords(buffer, position, end);
+                for (int i = 0; i < read; i++) {
+                    int offset = i * RECORD_SIZE;
+                    add(Math.floorDiv(buffer.getLong(offset) * finer.seconds, seconds), buffer.getLong(offset + 8),
+                        buffer.getDouble(offset + 16), buffer.getDouble(offset + 24), buffer.getDouble(offset + 32));
+                }
+                position += read;
+            }
+        }
+
+        void add(long index, long count, double sum, double min, double max) {
+            if (index <= lastIndex || (pending.getCount() > 0 && index < pendingIndex)) {
+                // already archived, e.g. transactions replayed after a restart
+                return;
+            }
+            if (pending.getCount() > 0 && index != pendingIndex) {
+                flush();
+            }
+            if (pending.getCount() == 0) {
+                pendingIndex = index;
+                appendedBefore = index;
+            }
+            pending.merge(count, sum, min, max);
+        }
+
+        void flush() {
+            if (pending.getCount() == 0) {
+                return;
+            }
+            record.clear();
+            record.putLong(pendingIndex)
+                  .putLong(pending.getCount())
+                  .putDouble(pending.getSum())
+                  .putDouble(pending.getMin())
+                  .putDouble(pending.getMax())
+                  .flip();
+            try {
+                long position = records * RECORD_SIZE;
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            records++;
+            lastIndex = pendingIndex;
+            appendedBefore = pendingIndex + 1;
+            if (coarser != null) {
+                coarser.add(Math.floorDiv(pendingIndex * seconds, coarser.seconds), pending.getCount(),
+                            pending.getSum(), pending.getMin(), pending.getMax());
+            }
+            pending.reset(-1);
+        }
+
+        /**
+         * Merges the records with an index from <tt>from</tt> to <tt>to</tt>, exclusive
+         */
+        void read(long from, long to, StatisticsBucket target) {
+            if (from >= to) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(READ_RECORDS * RECORD_SIZE);
+            long end = records;
+            for (long position = search(from); position < end; ) {
+                int read = readRecords(buffer, position, end);
+                for (int i = 0; i < read; i++) {
+                    int offset = i * RECORD_SIZE;
+                    if (buffer.getLong(offset) >= to) {
+                        return;
+                    }
+                    target.merge(buffer.getLong(offset + 8), buffer.getDouble(offset + 16),
+                                 buffer.getDouble(offset + 24), buffer.getDouble(offset + 32));
+                }
+                position += read;
+            }
+        }
+
+        /**
+         * @return position of the first record with an index of at least <tt>index</tt>
+         */
+        long search(long index) {
+            long low = 0;
+            long high = records;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (readIndex(middle) < index) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private long readIndex(long position) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            readFully(buffer, position * RECORD_SIZE);
+            return buffer.getLong(0);
+        }
+
+        /**
+         * @return number of records read into the buffer, from <tt>position</tt> up to <tt>end</tt>
+         */
+        private int readRecords(ByteBuffer buffer, long position, long end) {
+            int count = (int) Math.min(READ_RECORDS, end - position);
+            buffer.clear().limit(count * RECORD_SIZE);
+            readFully(buffer, position * RECORD_SIZE);
+            return count;
+        }
+
+        private void readFully(ByteBuffer buffer, long position) {
+            try {
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of " + channel);
+                    }
+                    position += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
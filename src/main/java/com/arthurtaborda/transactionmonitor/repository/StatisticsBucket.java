@@ -0,0 +1,127 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+/**
+ * Aggregate of the transactions that happened inside one slice of time.
+ * Only count, sum, min and max, and optionally a {@link QuantileSketch}, are kept, so a bucket has the same size
+ * no matter how many transactions it holds. The sum is a {@link CompensatedSum}, so merging and subtracting buckets
+ * does not build up rounding errors.
+ */
+class StatisticsBucket {
+
+    private long index;
+    private long count;
+    private final CompensatedSum sum;
+    private double min;
+    private double max;
+    private final QuantileSketch sketch;
+
+    StatisticsBucket() {
+        this(false);
+    }
+
+    /**
+     * @param withSketch <tt>true</tt> to also keep the amounts in a {@link QuantileSketch}
+     */
+    StatisticsBucket(boolean withSketch) {
+        this.sketch = withSketch ? new QuantileSketch() : null;
+        this.sum = new CompensatedSum();
+        reset(-1);
+    }
+
+    /**
+     * Empties the bucket and assigns it to a new slice of time
+     */
+    void reset(long index) {
+        this.index = index;
+        this.count = 0;
+        this.sum.reset();
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+        if (sketch != null) {
+            sketch.clear();
+        }
+    }
+
+    void add(double amount) {
+        // first, so a failed add leaves the bucket as it was and its count agrees with the totals of the window
+        if (sketch != null) {
+            sketch.add(amount);
+        }
+        count++;
+        sum.add(amount);
+        min = Math.min(min, amount);
+        max = Math.max(max, amount);
+    }
+
+    /**
+     * Adds the transactions aggregated in another bucket to this one
+     */
+    void merge(StatisticsBucket bucket) {
+        count += bucket.count;
+        sum.add(bucket.sum);
+        min = Math.min(min, bucket.min);
+        max = Math.max(max, bucket.max);
+        if (sketch != null && bucket.sketch != null) {
+            sketch.merge(bucket.sketch);
+        }
+    }
+
+    /**
+     * Adds transactions aggregated elsewhere without a sketch, e.g. read back from a {@link StatisticsArchive}
+     */
+    void merge(long count, double sum, double min, double max) {
+        this.count += count;
+        this.sum.add(sum);
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+    }
+
+    /**
+     * Removes the transactions aggregated in another bucket from this one. Min and max are left untouched.
+     */
+    void subtract(StatisticsBucket bucket) {
+        count -= bucket.count;
+        sum.subtract(bucket.sum);
+        if (sketch != null && bucket.sketch != null) {
+            sketch.subtract(bucket.sketch);
+        }
+    }
+
+    void resetExtremes() {
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    void mergeExtremes(StatisticsBucket bucket) {
+        min = Math.min(min, bucket.min);
+        max = Math.max(max, bucket.max);
+    }
+
+    TransactionStatistics toStatistics() {
+        return toStatistics(0);
+    }
+
+    TransactionStatistics toStatistics(long version) {
+        return new TransactionStatistics(count, sum.get(), min, max, sketch, version);
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    double getSum() {
+        return sum.get();
+    }
+
+    double getMin() {
+        return min;
+    }
+
+    double getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,153 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.System.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Lock free variant of {@link BucketedTransactionRepository}.
+ * Every bucket accumulates into {@link LongAdder}-style cells, which spread concurrent writers over
+ * separate cells per core, and the cells are only combined when the statistics are read.
+ * A bucket is recycled by swapping in a new one with a compare-and-set, so writers never wait for each other.
+ * <p>
+ * Statistics are weakly consistent: a transaction being added while they are read may be counted
+ * in some of the values only.
+ * <p>
+ * Transactions up to the allowed skew in the future go into extra slots ahead of the window, which are not
+ * read until their bucket is reached.
+ */
+public class StripedTransactionRepository implements TransactionRepository {
+
+    public static final int DEFAULT_BUCKET_COUNT = 60;
+
+    private static final Logger LOGGER = getLogger(StripedTransactionRepository.class.getName());
+
+    private static final long WINDOW_MS = Transaction.WINDOW_MS;
+
+    private final AtomicReferenceArray<StripedBucket> buckets;
+    private final int bucketCount;
+    private final long bucketMillis;
+    private final long allowedSkewMillis;
+
+    public StripedTransactionRepository() {
+        this(DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * @param bucketCount number of buckets the 60 seconds are split into, must divide 60000
+     */
+    public StripedTransactionRepository(int bucketCount) {
+        this(bucketCount, 0);
+    }
+
+    /**
+     * @param bucketCount       number of buckets the 60 seconds are split into, must divide 60000
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     */
+    public StripedTransactionRepository(int bucketCount, long allowedSkewMillis) {
+        if (bucketCount <= 0 || WINDOW_MS % bucketCount != 0) {
+            throw new IllegalArgumentException("Bucket count must divide " + WINDOW_MS + ": " + bucketCount);
+        }
+        this.bucketCount = bucketCount;
+        this.bucketMillis = WINDOW_MS / bucketCount;
+        this.allowedSkewMillis = allowedSkewMillis;
+        this.buckets = new AtomicReferenceArray<>(bucketCount
+                                                  + SlidingWindow.futureBuckets(allowedSkewMillis, bucketMillis));
+    }
+
+    @Override
+    public boolean addTransaction(Transaction transaction) {
+        return addTransaction(transaction.getAmount(), transaction.getTimestamp());
+    }
+
+    @Override
+    public boolean addTransaction(double amount, long timestamp) {
+        long now = currentTimeMillis();
+        if (!Transaction.happenedInLastMinute(timestamp, allowedSkewMillis, now)) {
+            return false;
+        }
+
+        long index = timestamp / bucketMillis;
+        if (index <= now / bucketMillis - bucketCount) {
+            // less than 60 seconds old but in the bucket that just left the window, it would never be counted
+            return false;
+        }
+        StripedBucket bucket = bucketFor(index);
+        if (bucket == null) {
+            return false;
+        }
+        bucket.add(amount);
+        return true;
+    }
+
+    /**
+     * @return the bucket for the given index, or <tt>null</tt> if its slot already moved past it
+     */
+    private StripedBucket bucketFor(long index) {
+        int slot = (int) (index % buckets.length());
+        StripedBucket bucket = buckets.get(slot);
+        while (bucket == null || bucket.index != index) {
+            if (bucket != null && bucket.index > index) {
+                return null;
+            }
+            StripedBucket newBucket = new StripedBucket(index);
+            if (buckets.compareAndSet(slot, bucket, newBucket)) {
+                return newBucket;
+            }
+            bucket = buckets.get(slot);
+        }
+        return bucket;
+    }
+
+    @Override
+    public TransactionStatistics getStatistics() {
+        LOGGER.debug("Get statistics");
+        long current = currentTimeMillis() / bucketMillis;
+        long oldest = current - bucketCount;
+
+        long count = 0;
+        CompensatedSum sum = new CompensatedSum();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < buckets.length(); i++) {
+            StripedBucket bucket = buckets.get(i);
+            if (bucket != null && bucket.index > oldest && bucket.index <= current) {
+                long bucketTransactions = bucket.count.sum();
+                if (bucketTransactions > 0) {
+                    count += bucketTransactions;
+                    sum.add(bucket.sum.sum());
+                    min = Math.min(min, bucket.min.get());
+                    max = Math.max(max, bucket.max.get());
+                }
+            }
+        }
+
+        return new TransactionStatistics(count, sum.get(), min, max);
+    }
+
+    private static class StripedBucket {
+
+        private final long index;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        private StripedBucket(long index) {
+            this.index = index;
+        }
+
+        private void add(double amount) {
+            min.accumulate(amount);
+            max.accumulate(amount);
+            sum.add(amount);
+            count.increment();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Largest transactions and most frequent {@link Dimension} values of the last 60 seconds.
+ * <p>
+ * Every second of the window has a bucket with a min heap of its {@link #MAX_K} largest amounts and a
+ * {@link SpaceSaving} summary per dimension, so memory is fixed and adding a transaction takes constant time.
+ * Buckets are reused as the window moves forward, and the top of the whole window is only merged from them
+ * when it is read.
+ * <p>
+ * The largest transactions are exact. The counts of the most frequent values are exact while a second has at
+ * most {@link #MAX_K} different values, beyond that they are Space-Saving estimates with their error.
+ * <p>
+ * Transactions up to the allowed skew in the future go into buckets ahead of the window, which are only read once
+ * their second is reached.
+ * <p>
+ * The buckets can be split into stripes, each with its own lock, and every thread adds to the stripe it was given
+ * on its first add, so event loops do not wait for each other. Reads merge the buckets of every stripe. Each stripe
+ * takes about 1.3MB, and the most frequent values are estimated per stripe, so their error grows with the stripes.
+ */
+public class TopTransactions {
+
+    public static final int MAX_K = 100;
+
+    private static final int BUCKET_COUNT = 60;
+    private static final long BUCKET_MS = Transaction.WINDOW_MS / BUCKET_COUNT;
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+
+    private final long allowedSkewMillis;
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe;
+    private final ThreadLocal<Stripe> threadStripe;
+
+    public TopTransactions() {
+        this(0);
+    }
+
+    /**
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     */
+    public TopTransactions(long allowedSkewMillis) {
+        this(allowedSkewMillis, 1);
+    }
+
+    /**
+     * @param allowedSkewMillis how far in the future timestamps are accepted
+     * @param stripes           number of stripes, usually the number of event loops adding transactions
+     */
+    public TopTransactions(long allowedSkewMillis, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripes must be positive: " + stripes);
+        }
+        int bucketCount = BUCKET_COUNT + SlidingWindow.futureBuckets(allowedSkewMillis, BUCKET_MS);
+        this.allowedSkewMillis = allowedSkewMillis;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(bucketCount);
+        }
+        this.nextStripe = new AtomicInteger();
+        this.threadStripe = ThreadLocal.withInitial(
+                () -> this.stripes[Math.floorMod(nextStripe.getAndIncrement(), this.stripes.length)]);
+    }
+
+    /**
+     * @param dimensionValues values of the transaction, or <tt>null</tt> if it has none
+     * @return <tt>true</tt> if the transaction happened in the last 60 seconds, or up to the allowed skew in the
+     * future, and was added
+     */
+    public boolean add(double amount, long timestamp, DimensionValues dimensionValues) {
+        if (!Transaction.happenedInLastMinute(timestamp, allowedSkewMillis)) {
+            return false;
+        }
+
+        long index = timestamp / BUCKET_MS;
+        Stripe stripe = stripes.length == 1 ? stripes[0] : threadStripe.get();
+        long writeLock = stripe.lock.writeLock();
+        try {
+            TopBucket bucket = stripe.buckets[(int) (index % stripe.buckets.length)];
+            if (bucket.index != index) {
+                if (bucket.index > index) {
+                    return false;
+                }
+                bucket.reset(index);
+            }
+            bucket.add(amount, timestamp, dimensionValues);
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * @return the <tt>k</tt> largest transactions of the last 60 seconds, largest first
+     */
+    public List<Transaction> getLargest(int k) {
+        checkK(k);
+        List<Transaction> largest = new ArrayList<>();
+        long now = currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            long readLock = stripe.lock.readLock();
+            try {
+                for (TopBucket bucket : stripe.buckets) {
+                    if (isLive(bucket, now)) {
+                        for (int i = 0; i < bucket.size; i++) {
+                            largest.add(new Transaction(bucket.amounts[i], bucket.timestamps[i]));
+                        }
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(readLock);
+            }
+        }
+        largest.sort(Comparator.comparingDouble(Transaction::getAmount).reversed());
+        return largest.size() > k ? new ArrayList<>(largest.subList(0, k)) : largest;
+    }
+
+    /**
+     * Merges the summaries of the last 60 seconds. A value missing from a full summary could have had up to its
+     * lowest count there, which is added to the count and error of the value.
+     *
+     * @return the <tt>k</tt> values of the dimension with most transactions in the last 60 seconds,
+     * most frequent first
+     */
+    public List<HeavyHitter> getMostFrequent(Dimension dimension, int k) {
+        checkK(k);
+        Map<Long, long[]> totals = new HashMap<>();
+        Map<Long, String> values = new HashMap<>();
+        long missingCount = 0;
+
+        long now = currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            long readLock = stripe.lock.readLock();
+            try {
+                for (TopBucket bucket : stripe.buckets) {
+                    if (!isLive(bucket, now)) {
+                        continue;
+                    }
+                    SpaceSaving summary = bucket.summaries[dimension.ordinal()];
+                    missingCount += summary.getMinCount();
+                    for (int i = 0; i < summary.size(); i++) {
+                        long[] total = totals.computeIfAbsent(summary.getKey(i), key -> new long[3]);
+                        total[0] += summary.getCount(i);
+                        total[1] += summary.getError(i);
+                        total[2] += summary.getMinCount();
+                        values.putIfAbsent(summary.getKey(i), summary.getValue(i));
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(readLock);
+            }
+        }
+
+        List<HeavyHitter> hitters = new ArrayList<>();
+        for (Map.Entry<Long, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            // the min counts of the summaries the value is missing from
+            long missing = missingCount - total[2];
+            hitters.add(new HeavyHitter(values.get(entry.getKey()), total[0] + missing, total[1] + missing));
+        }
+        hitters.sort(Comparator.comparingLong(HeavyHitter::getCount).reversed());
+        return hitters.size() > k ? new ArrayList<>(hitters.subList(0, k)) : hitters;
+    }
+
+    private static void checkK(int k) {
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("K must be between 1 and " + MAX_K + ": " + k);
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if the bucket is one of the last 60 seconds, not expired nor in the future
+     */
+    private static boolean isLive(TopBucket bucket, long now) {
+        return bucket.index >= (now - Transaction.WINDOW_MS + 1) / BUCKET_MS && bucket.index <= now / BUCKET_MS;
+    }
+
+    /**
+     * Buckets of the threads given this stripe, and the lock they take to add to them
+     */
+    private static class Stripe {
+
+        private final StampedLock lock = new StampedLock();
+        private final TopBucket[] buckets;
+
+        Stripe(int bucketCount) {
+            this.buckets = new TopBucket[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                buckets[i] = new TopBucket();
+            }
+        }
+    }
+
+    /**
+     * One second of the window. The amounts are a min heap, so the smallest of the largest is at the root.
+     */
+    private static class TopBucket {
+
+        private long index = -1;
+        private final double[] amounts = new double[MAX_K];
+        private final long[] timestamps = new long[MAX_K];
+        private int size;
+        private final SpaceSaving[] summaries;
+
+        TopBucket() {
+            this.summaries = new SpaceSaving[DIMENSIONS.length];
+            for (int i = 0; i < summaries.length; i++) {
+                summaries[i] = new SpaceSaving(MAX_K);
+            }
+        }
+
+        void reset(long index) {
+            this.index = index;
+            this.size = 0;
+            for (SpaceSaving summary : summaries) {
+                summary.clear();
+            }
+        }
+
+        void add(double amount, long timestamp, DimensionValues dimensionValues) {
+            if (size < MAX_K) {
+                amounts[size] = amount;
+                timestamps[size] = timestamp;
+                siftUp(size++);
+            } else if (amount > amounts[0]) {
+                amounts[0] = amount;
+                timestamps[0] = timestamp;
+                siftDown(0);
+            }
+
+            if (dimensionValues != null) {
+                for (Dimension dimension : DIMENSIONS) {
+                    long key = dimensionValues.getDimensionKey(dimension);
+                    if (key != DimensionStatistics.NO_KEY) {
+                        summaries[dimension.ordinal()].add(key, dimension, dimensionValues);
+                    }
+                }
+            }
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (amounts[parent] <= amounts[position]) {
+                    return;
+                }
+                swap(parent, position);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                int child = position * 2 + 1;
+                if (child >= size) {
+                    return;
+                }
+                if (child + 1 < size && amounts[child + 1] < amounts[child]) {
+                    child++;
+                }
+                if (amounts[position] <= amounts[child]) {
+                    return;
+                }
+                swap(position, child);
+                position = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            double amount = amounts[i];
+            amounts[i] = amounts[j];
+            amounts[j] = amount;
+            long timestamp = timestamps[i];
+            timestamps[i] = timestamps[j];
+            timestamps[j] = timestamp;
+        }
+    }
+}
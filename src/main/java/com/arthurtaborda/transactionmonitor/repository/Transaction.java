@@ -4,6 +4,11 @@ import static java.lang.System.currentTimeMillis;
 
 public class Transaction {
 
+    /**
+     * Only transactions that happened within this window are accepted
+     */
+    public static final long WINDOW_MS = 60000;
+
     private final double amount;
     private final long timestamp;
 
@@ -21,7 +26,33 @@ public class Transaction {
     }
 
     public boolean happenedInLastMinute() {
+        return happenedInLastMinute(timestamp);
+    }
+
+    public static boolean happenedInLastMinute(long timestamp) {
+        return happenedWithin(timestamp, WINDOW_MS, 0);
+    }
+
+    /**
+     * @param allowedSkewMillis how far in the future the timestamp can be, for producers whose clock is ahead
+     */
+    public static boolean happenedInLastMinute(long timestamp, long allowedSkewMillis) {
+        return happenedWithin(timestamp, WINDOW_MS, allowedSkewMillis);
+    }
+
+    /**
+     * @param now the time to check against, so that several checks of one call agree with each other
+     */
+    public static boolean happenedInLastMinute(long timestamp, long allowedSkewMillis, long now) {
+        return timestamp - now <= allowedSkewMillis && now - timestamp < WINDOW_MS;
+    }
+
+    public static boolean happenedWithin(long timestamp, long windowMillis) {
+        return happenedWithin(timestamp, windowMillis, 0);
+    }
+
+    public static boolean happenedWithin(long timestamp, long windowMillis, long allowedSkewMillis) {
         long currentTimeMillis = currentTimeMillis();
-        return currentTimeMillis >= timestamp && currentTimeMillis - timestamp < 60000;
+        return timestamp - currentTimeMillis <= allowedSkewMillis && currentTimeMillis - timestamp < windowMillis;
     }
 }
@@ -0,0 +1,242 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Append only log of transactions, kept as a sequence of memory mapped segment files of fixed size records.
+ * <p>
+ * Every record is 16 bytes: the timestamp followed by the amount. The first record of a segment is a header
+ * holding the newest timestamp written to it, so recovery and reclaiming can tell if a segment still has
+ * transactions inside the retention without reading it. A record with timestamp 0 marks the end of the segment,
+ * which needs no extra bookkeeping because new files are zero filled and such a transaction is never accepted.
+ * <p>
+ * Appends only write to the mapped pages, which belong to the operating system, so they survive the process
+ * crashing. {@link #force()} flushes them to the disk and is meant to be called periodically, so a single flush
+ * covers every append since the previous one.
+ */
+class TransactionLog {
+
+    private static final Logger LOGGER = getLogger(TransactionLog.class.getName());
+
+    static final int RECORD_SIZE = 16;
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long retentionMillis;
+
+    private final Deque<Segment> segments;
+    private final List<Segment> unforced;
+    private Segment current;
+    private long nextSequence;
+
+    /**
+     * @param segmentRecords  number of transactions each segment holds
+     * @param retentionMillis segments whose newest transaction is older than this are deleted
+     */
+    TransactionLog(Path directory, int segmentRecords, long retentionMillis) throws IOException {
+        if (segmentRecords <= 0) {
+            throw new IllegalArgumentException("Segment records must be positive: " + segmentRecords);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentRecords = segmentRecords;
+        this.retentionMillis = retentionMillis;
+        this.segments = new ArrayDeque<>();
+        this.unforced = new ArrayList<>();
+        open();
+    }
+
+    private void open() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unknown file in transaction log: " + file);
+                }
+            }
+        }
+        Collections.sort(sequences);
+
+        for (long sequence : sequences) {
+            segments.add(Segment.open(segmentPath(sequence), sequence));
+            nextSequence = sequence + 1;
+        }
+        current = segments.peekLast();
+    }
+
+    /**
+     * Adds every logged transaction newer than the retention to the repository, oldest segment first.
+     *
+     * @return the number of transactions the repository accepted
+     */
+    synchronized int replay(TransactionRepository repository, long now) {
+        double[] amounts = new double[1024];
+        long[] timestamps = new long[amounts.length];
+        int accepted = 0;
+        for (Segment segment : segments) {
+            if (segment.maxTimestamp < now - retentionMillis) {
+                continue;
+            }
+            int length = 0;
+            for (int i = 0; i < segment.records; i++) {
+                timestamps[length] = segment.timestamp(i);
+                amounts[length] = segment.amount(i);
+                if (++length == amounts.length) {
+                    accepted += repository.addTransactions(amounts, timestamps, length);
+                    length = 0;
+                }
+            }
+            accepted += repository.addTransactions(amounts, timestamps, length);
+        }
+        return accepted;
+    }
+
+    synchronized void append(double amount, long timestamp) {
+        if (current == null || current.records == segmentRecords) {
+            roll();
+        }
+        current.append(amount, timestamp);
+    }
+
+    private void roll() {
+        if (current != null) {
+            unforced.add(current);
+        }
+        long sequence = nextSequence++;
+        try {
+            current = Segment.create(segmentPath(sequence), sequence, segmentRecords);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create log segment " + sequence, e);
+        }
+        segments.add(current);
+    }
+
+    /**
+     * Flushes the appended transactions to the disk. Blocks, so it must not run on an event loop.
+     */
+    void force() {
+        List<Segment> forcing;
+        synchronized (this) {
+            forcing = new ArrayList<>(unforced);
+            unforced.clear();
+            if (current != null) {
+                forcing.add(current);
+            }
+        }
+        for (Segment segment : forcing) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Deletes the segments that were filled and only hold transactions older than the retention.
+     *
+     * @return the number of deleted segments
+     */
+    int reclaim(long now) {
+        List<Segment> expired = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                if (segment != current && segment.maxTimestamp < now - retentionMillis) {
+                    expired.add(segment);
+                }
+            }
+            segments.removeAll(expired);
+            unforced.removeAll(expired);
+        }
+        for (Segment segment : expired) {
+            try {
+                Files.deleteIfExists(segmentPath(segment.sequence));
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete log segment " + segment.sequence, e);
+            }
+        }
+        return expired.size();
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%020d", sequence) + SUFFIX);
+    }
+
+    private static class Segment {
+
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+
+        private int records;
+        private long maxTimestamp;
+
+        private Segment(long sequence, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / RECORD_SIZE - 1;
+            this.maxTimestamp = buffer.getLong(0);
+        }
+
+        static Segment create(Path path, long sequence, int records) throws IOException {
+            return new Segment(sequence, map(path, (long) (records + 1) * RECORD_SIZE));
+        }
+
+        static Segment open(Path path, long sequence) throws IOException {
+            Segment segment = new Segment(sequence, map(path, Files.size(path)));
+            while (segment.records < segment.capacity && segment.timestamp(segment.records) != 0) {
+                segment.records++;
+            }
+            return segment;
+        }
+
+        private static MappedByteBuffer map(Path path, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+                // the mapping stays valid after the channel is closed
+                return channel.map(READ_WRITE, 0, size);
+            }
+        }
+
+        void append(double amount, long timestamp) {
+            int position = (records + 1) * RECORD_SIZE;
+            // the amount goes first, the timestamp is what marks the record as written
+            buffer.putDouble(position + 8, amount);
+            buffer.putLong(position, timestamp);
+            records++;
+            if (timestamp > maxTimestamp) {
+                maxTimestamp = timestamp;
+                buffer.putLong(0, timestamp);
+            }
+        }
+
+        long timestamp(int record) {
+            return buffer.getLong((record + 1) * RECORD_SIZE);
+        }
+
+        double amount(int record) {
+            return buffer.getDouble((record + 1) * RECORD_SIZE + 8);
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.arthurtaborda.transactionmonitor.repository;
 
-import java.util.DoubleSummaryStatistics;
-
 public interface TransactionRepository {
 
     /**
@@ -10,8 +8,55 @@ public interface TransactionRepository {
      */
     boolean addTransaction(Transaction transaction);
 
+    /**
+     * Same as {@link #addTransaction(Transaction)}, for callers that hold the fields as primitives.
+     * Implementations should override it to avoid creating the {@link Transaction}.
+     *
+     * @return <tt>true</tt> if the transaction was added
+     */
+    default boolean addTransaction(double amount, long timestamp) {
+        return addTransaction(new Transaction(amount, timestamp));
+    }
+
+    /**
+     * Adds the first <tt>length</tt> transactions of the arrays in one step.
+     * Implementations should override it to pay for locking once per batch instead of once per transaction.
+     *
+     * @return the number of transactions that were added
+     */
+    default int addTransactions(double[] amounts, long[] timestamps, int length) {
+        int added = 0;
+        for (int i = 0; i < length; i++) {
+            if (addTransaction(amounts[i], timestamps[i])) {
+                added++;
+            }
+        }
+        return added;
+    }
+
     /**
      * @return Statistics about the transactions from the last 60 seconds
      */
     TransactionStatistics getStatistics();
+
+    /**
+     * @return Statistics about the transactions from the last <tt>windowMillis</tt>
+     * @throws IllegalArgumentException if the repository does not keep that window
+     */
+    default TransactionStatistics getStatistics(long windowMillis) {
+        if (windowMillis != Transaction.WINDOW_MS) {
+            throw new IllegalArgumentException("Window not supported: " + windowMillis);
+        }
+        return getStatistics();
+    }
+
+    /**
+     * @param fromMillis start of the range, inclusive
+     * @param toMillis   end of the range, exclusive
+     * @return Statistics about the transactions that left the window and were archived, in the range
+     * @throws IllegalArgumentException if the repository does not archive its statistics, or the range is empty
+     */
+    default TransactionStatistics getStatistics(long fromMillis, long toMillis) {
+        throw new IllegalArgumentException("Statistics are not archived");
+    }
 }
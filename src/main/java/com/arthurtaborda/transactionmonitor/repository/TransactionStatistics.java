@@ -5,13 +5,28 @@ import java.util.DoubleSummaryStatistics;
 
 import static java.math.RoundingMode.FLOOR;
 
+/**
+ * Statistics of a window, rounded down to 2 decimal places. The exact sum, min and max are kept as well, so
+ * statistics of separate transactions can be merged without adding up rounding errors.
+ */
 public class TransactionStatistics {
 
+    private static final double MAX_EXACT_ROUNDING = (1L << 52) / 100d;
+    private static final double SPLITTER = (1 << 27) + 1;
+
     private final long count;
     private final double avg;
     private final double sum;
     private final double min;
     private final double max;
+    private final double p50;
+    private final double p90;
+    private final double p95;
+    private final double p99;
+    private final long version;
+    private final double exactSum;
+    private final double exactMin;
+    private final double exactMax;
 
     public TransactionStatistics() {
         this.count = 0;
@@ -19,14 +34,57 @@ public class TransactionStatistics {
         this.sum = 0;
         this.min = 0;
         this.max = 0;
+        this.p50 = 0;
+        this.p90 = 0;
+        this.p95 = 0;
+        this.p99 = 0;
+        this.version = 0;
+        this.exactSum = 0;
+        this.exactMin = 0;
+        this.exactMax = 0;
     }
 
     public TransactionStatistics(DoubleSummaryStatistics st) {
+        this(st, 0);
+    }
+
+    TransactionStatistics(DoubleSummaryStatistics st, long version) {
         this.count = st.getCount();
         this.avg = round(st.getAverage());
         this.sum = round(st.getSum());
         this.min = st.getMin() == Double.POSITIVE_INFINITY ? 0 : round(st.getMin());
         this.max = st.getMax() == Double.NEGATIVE_INFINITY ? 0 : round(st.getMax());
+        this.p50 = 0;
+        this.p90 = 0;
+        this.p95 = 0;
+        this.p99 = 0;
+        this.version = version;
+        this.exactSum = st.getSum();
+        this.exactMin = count == 0 ? 0 : st.getMin();
+        this.exactMax = count == 0 ? 0 : st.getMax();
+    }
+
+    public TransactionStatistics(long count, double sum, double min, double max) {
+        this(count, sum, min, max, null, 0);
+    }
+
+    /**
+     * The percentiles are estimated from the sketch and bounded by min and max, they are 0 without a sketch
+     */
+    TransactionStatistics(long count, double sum, double min, double max, QuantileSketch sketch, long version) {
+        this.count = count;
+        this.avg = count == 0 ? 0 : round(sum / count);
+        this.sum = round(sum);
+        this.min = count == 0 ? 0 : round(min);
+        this.max = count == 0 ? 0 : round(max);
+        this.p50 = percentile(sketch, 0.5, min, max);
+        this.p90 = percentile(sketch, 0.9, min, max);
+        this.p95 = percentile(sketch, 0.95, min, max);
+        this.p99 = percentile(sketch, 0.99, min, max);
+        this.version = version;
+        this.exactSum = sum;
+        this.exactMin = count == 0 ? 0 : min;
+        this.exactMax = count == 0 ? 0 : max;
     }
 
     public long getCount() {
@@ -49,7 +107,114 @@ public class TransactionStatistics {
         return max;
     }
 
-    private static double round(double val) {
-        return new BigDecimal(val).setScale(2, FLOOR).doubleValue();
+    /**
+     * @return 0 if the repository does not estimate percentiles
+     */
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    /**
+     * Statistics with the same non zero version, from the same repository, hold the same values.
+     *
+     * @return the version of the snapshot, or 0 if the repository does not version its statistics
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the sum before rounding
+     */
+    public double getExactSum() {
+        return exactSum;
+    }
+
+    /**
+     * @return the min before rounding
+     */
+    public double getExactMin() {
+        return exactMin;
+    }
+
+    /**
+     * @return the max before rounding
+     */
+    public double getExactMax() {
+        return exactMax;
+    }
+
+    /**
+     * Merges the statistics of transactions that are not in these ones, e.g. from another node. Count, sum,
+     * min, max and average are exact. Percentiles can not be merged, they are only kept when one of the two
+     * statistics is empty.
+     *
+     * @return statistics of the transactions of both, without a version
+     */
+    public TransactionStatistics merge(TransactionStatistics statistics) {
+        if (statistics.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            return statistics;
+        }
+        return new TransactionStatistics(count + statistics.count, exactSum + statistics.exactSum,
+                                         Math.min(exactMin, statistics.exactMin),
+                                         Math.max(exactMax, statistics.exactMax));
+    }
+
+    boolean hasSameValues(TransactionStatistics statistics) {
+        return count == statistics.count && sum == statistics.sum && min == statistics.min && max == statistics.max
+                && p50 == statistics.p50 && p90 == statistics.p90 && p95 == statistics.p95 && p99 == statistics.p99;
+    }
+
+    private static double percentile(QuantileSketch sketch, double quantile, double min, double max) {
+        if (sketch == null || sketch.getCount() == 0) {
+            return 0;
+        }
+        return round(Math.max(min, Math.min(max, sketch.quantile(quantile))));
+    }
+
+    /**
+     * Rounds down to 2 decimal places the exact binary value of the double, the same as
+     * <tt>new BigDecimal(val).setScale(2, FLOOR).doubleValue()</tt> but without allocating.
+     * <p>
+     * <tt>val * 100</tt> is rounded to the nearest double, and it can only round across an integer by landing on it.
+     * The error of the product is computed exactly with Dekker's split, and when the product is an integer and the
+     * exact product is below it, the floor is the integer below. Values too large for the product to be an exact
+     * long fall back to {@link BigDecimal}.
+     */
+    static double round(double val) {
+        if (!(Math.abs(val) < MAX_EXACT_ROUNDING)) {
+            return new BigDecimal(val).setScale(2, FLOOR).doubleValue();
+        }
+        if (val == 0) {
+            // BigDecimal has no negative zero
+            return 0;
+        }
+        double product = val * 100;
+        double floor = Math.floor(product);
+        if (floor == product) {
+            double split = SPLITTER * val;
+            double high = split - (split - val);
+            double low = val - high;
+            double error = (high * 100 - product) + low * 100;
+            if (error < 0) {
+                floor -= 1;
+            }
+        }
+        return floor / 100;
     }
 }
@@ -0,0 +1,74 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.slf4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Creates virtual threads when the JVM has them (Java 21 and later), and daemon platform threads otherwise.
+ * <p>
+ * The project is compiled for Java 17, so the <tt>Thread.ofVirtual()</tt> builder is looked up once by reflection
+ * instead of being called directly.
+ */
+public final class VirtualThreads {
+
+    private static final Logger LOGGER = getLogger(VirtualThreads.class.getName());
+
+    private static final Method OF_VIRTUAL = lookUp(Thread.class, "ofVirtual");
+    private static final Method NAME = lookUp("java.lang.Thread$Builder", "name", String.class, long.class);
+    private static final Method FACTORY = lookUp("java.lang.Thread$Builder", "factory");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return <tt>true</tt> if the JVM creates virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && NAME != null && FACTORY != null;
+    }
+
+    /**
+     * @param prefix  name of the threads, followed by their number
+     * @param virtual <tt>true</tt> to create virtual threads, if the JVM supports them
+     */
+    public static ThreadFactory factory(String prefix, boolean virtual) {
+        if (virtual && isSupported()) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+                return (ThreadFactory) FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create virtual threads", e);
+            }
+        }
+        if (virtual) {
+            LOGGER.warn("Virtual threads need Java 21 or later, " + prefix + " threads are platform threads");
+        }
+        AtomicLong count = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Method lookUp(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return lookUp(Class.forName(className), name, parameterTypes);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method lookUp(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.FakeTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(VertxUnitRunner.class)
+public class AlertEngineTest {
+
+    private Vertx vertx;
+    private final List<Long> windowsRead = new ArrayList<>();
+    private TransactionStatistics statistics = new TransactionStatistics();
+
+    private final BucketedTransactionRepository repository = new BucketedTransactionRepository() {
+        @Override
+        public TransactionStatistics getStatistics(long windowMillis) {
+            windowsRead.add(windowMillis);
+            return statistics;
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown(TestContext context) throws Exception {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    private AlertEngine engine(String rules) {
+        AlertEngine engine = new AlertEngine(vertx, repository,
+                                             AlertRule.parseAll(rules, AlertEngine.TICK_INTERVAL_MS));
+        windowsRead.clear();
+        return engine;
+    }
+
+    @Test
+    public void whenRuleStartsAndStopsBeingBroken_publishOneAlertEach(TestContext context) {
+        AlertEngine engine = engine("count(10s) > 2;max(10s) > 500");
+        List<JsonObject> received = new ArrayList<>();
+        Async async = context.async(2);
+        vertx.eventBus().<JsonObject>consumer(AlertEngine.ALERTS_ADDRESS, message -> {
+            received.add(message.body());
+            async.countDown();
+        });
+
+        assertThat(engine.tick(1000)).isEmpty();
+        statistics = new TransactionStatistics(3, 300, 100, 100);
+        List<JsonObject> firing = engine.tick(2000);
+        assertThat(engine.tick(3000)).isEmpty();
+        statistics = new TransactionStatistics(1, 100, 100, 100);
+        List<JsonObject> resolved = engine.tick(4000);
+
+        assertThat(firing).hasSize(1);
+        assertThat(firing.get(0).getString("rule")).isEqualTo("count(10s) > 2");
+        assertThat(firing.get(0).getString("state")).isEqualTo("firing");
+        assertThat(firing.get(0).getDouble("value")).isEqualTo(3);
+        assertThat(firing.get(0).getDouble("threshold")).isEqualTo(2);
+        assertThat(firing.get(0).getLong("timestamp")).isEqualTo(2000);
+        assertThat(resolved).hasSize(1);
+        assertThat(resolved.get(0).getString("state")).isEqualTo("resolved");
+        // rules on the same window read the statistics once per tick
+        assertThat(windowsRead).containsExactly(10000L, 10000L, 10000L, 10000L);
+
+        async.awaitSuccess(5000);
+        assertThat(received).containsExactly(firing.get(0), resolved.get(0));
+    }
+
+    @Test
+    public void whenWindowIsNotKeptByTheRepository_throwException() {
+        assertThatThrownBy(() -> new AlertEngine(vertx, new FakeTransactionRepository(),
+                                                 AlertRule.parseAll("count(10s) > 2", 1000)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("count(10s) > 2");
+    }
+}
@@ -0,0 +1,106 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AlertRuleTest {
+
+    @Test
+    public void whenRulesAreParsed_readTheirStatisticAndWindow() {
+        List<AlertRule> rules = AlertRule.parseAll(
+                " count(10s) > 1000 ; max(1m)<5.5;;avg(500ms) deviates 3 sigma over 5m", 1000);
+
+        assertThat(rules).extracting(AlertRule::getText)
+                         .containsExactly("count(10s) > 1000", "max(1m)<5.5", "avg(500ms) deviates 3 sigma over 5m");
+        assertThat(rules).extracting(AlertRule::getWindowMillis).containsExactly(10000L, 60000L, 500L);
+        TransactionStatistics statistics = new TransactionStatistics(4, 100, 10, 40);
+        assertThat(rules).extracting(rule -> rule.value(statistics)).containsExactly(4.0, 40.0, 25.0);
+    }
+
+    @Test
+    public void whenRuleIsInvalid_throwException() {
+        assertThatThrownBy(() -> AlertRule.parse("count(10s) >= 1000", 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AlertRule.parse("p99(10s) > 1000", 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AlertRule.parse("count(0s) > 1000", 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AlertRule.parse("count(1s) deviates 3 sigma over 1s", 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void whenThresholdIsCrossed_breakTheRule() {
+        AlertRule above = AlertRule.parse("count(10s) > 1000", 1000);
+        AlertRule below = AlertRule.parse("min(10s) < 1", 1000);
+
+        assertThat(above.check(1000)).isFalse();
+        assertThat(above.check(1001)).isTrue();
+        assertThat(below.check(1)).isFalse();
+        assertThat(below.check(0.5)).isTrue();
+    }
+
+    @Test
+    public void whenValueDeviatesFromTheBaseline_breakTheRule() {
+        AlertRule rule = AlertRule.parse("count(1s) deviates 3 sigma over 10s", 1000);
+        AlertRule same = AlertRule.parse("count(1s) deviates 3 sigma over 10s", 1000);
+        for (int tick = 0; tick < 10; tick++) {
+            rule.check(tick % 2 == 0 ? 100 : 110);
+            same.check(tick % 2 == 0 ? 100 : 110);
+        }
+
+        // mean 105, standard deviation 5
+        assertThat(same.check(119)).isFalse();
+        assertThat(rule.check(121)).isTrue();
+        JsonObject alert = new JsonObject();
+        rule.describe(alert);
+        assertThat(alert.getDouble("mean")).isEqualTo(105);
+        assertThat(alert.getDouble("stddev")).isEqualTo(5);
+    }
+
+    @Test
+    public void whenBaselineIsNotComplete_doNotBreakTheRule() {
+        AlertRule rule = AlertRule.parse("count(1s) deviates 3 sigma over 10s", 1000);
+        for (int tick = 0; tick < 9; tick++) {
+            assertThat(rule.check(100)).isFalse();
+        }
+
+        assertThat(rule.check(1000)).isFalse();
+        // mean 190, standard deviation 270
+        assertThat(rule.check(1100)).isTrue();
+    }
+
+    @Test
+    public void whenBaselineIsFlat_doNotBreakTheRule() {
+        AlertRule rule = AlertRule.parse("count(1s) deviates 3 sigma over 10s", 1000);
+        for (int tick = 0; tick < 10; tick++) {
+            rule.check(100);
+        }
+
+        assertThat(rule.check(101)).isFalse();
+        JsonObject alert = new JsonObject();
+        rule.describe(alert);
+        assertThat(alert.getDouble("stddev")).isEqualTo(0);
+    }
+
+    @Test
+    public void whenBaselineHasLargeValues_keepItsStandardDeviationExact() {
+        AlertRule rule = AlertRule.parse("sum(1s) deviates 3 sigma over 10s", 1000);
+        for (int tick = 0; tick < 1000; tick++) {
+            rule.check(1e9 + (tick % 2 == 0 ? 0 : 10));
+        }
+
+        assertThat(rule.check(1e9 + 5)).isFalse();
+        JsonObject alert = new JsonObject();
+        rule.describe(alert);
+        assertThat(alert.getDouble("mean")).isEqualTo(1e9 + 5);
+        assertThat(alert.getDouble("stddev")).isEqualTo(5);
+        assertThat(rule.check(1e9 + 30)).isTrue();
+    }
+}
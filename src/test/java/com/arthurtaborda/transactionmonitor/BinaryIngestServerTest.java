@@ -0,0 +1,113 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(VertxUnitRunner.class)
+public class BinaryIngestServerTest {
+
+    private static final int PORT = 9291;
+
+    private Vertx vertx;
+    private BucketedTransactionRepository repository;
+    private TopTransactions top;
+
+    @Before
+    public void setUp(TestContext context) throws Exception {
+        vertx = Vertx.vertx();
+        repository = new BucketedTransactionRepository();
+        top = new TopTransactions();
+        TransactionMonitor.deployBinary(vertx, PORT, repository, top, 2)
+                          .setHandler(context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) throws Exception {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void whenFramesArePipelined_ackEveryFrameInOrder() throws IOException {
+        long now = currentTimeMillis();
+        try (Socket socket = new Socket("localhost", PORT)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+
+            output.writeInt(2);
+            writeTransaction(output, now, 100);
+            writeTransaction(output, now, 300);
+            output.writeInt(2);
+            writeTransaction(output, now, 500);
+            writeTransaction(output, now - 61000, 700);
+            output.writeInt(2);
+            writeTransaction(output, now, Double.NaN);
+            writeTransaction(output, now, 200);
+            output.flush();
+
+            assertThat(input.readInt()).isEqualTo(2);
+            assertThat(input.readInt()).isEqualTo(1);
+            assertThat(input.readInt()).isEqualTo(1);
+        }
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(4);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(1100);
+        assertThat(top.getLargest(1).get(0).getAmount()).isEqualTo(500);
+    }
+
+    @Test
+    public void whenFrameArrivesInPieces_waitForTheWholeFrame() throws Exception {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+
+            output.writeShort(0);
+            output.flush();
+            Thread.sleep(50);
+            output.writeShort(1);
+            output.writeLong(currentTimeMillis());
+            output.flush();
+            Thread.sleep(50);
+            output.writeDouble(100);
+            output.flush();
+
+            assertThat(input.readInt()).isEqualTo(1);
+        }
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenFrameHasInvalidCount_ackInvalidAndClose() throws IOException {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+
+            output.writeInt(BinaryIngestServer.MAX_FRAME_TRANSACTIONS + 1);
+            output.flush();
+
+            assertThat(input.readInt()).isEqualTo(BinaryIngestServer.INVALID_FRAME);
+            assertThat(input.read()).isEqualTo(-1);
+        }
+    }
+
+    private static void writeTransaction(DataOutputStream output, long timestamp, double amount) throws IOException {
+        output.writeLong(timestamp);
+        output.writeDouble(amount);
+    }
+}
@@ -0,0 +1,167 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.Transaction;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+public class BucketedTransactionRepositoryTest {
+
+    private BucketedTransactionRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new BucketedTransactionRepository();
+    }
+
+    private boolean addTransaction(int amount) {
+        return addTransaction(amount, currentTimeMillis());
+    }
+
+    private boolean addTransaction(int amount, long timestamp) {
+        return repository.addTransaction(new Transaction(amount, timestamp));
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        Runnable add1000Transactions = () -> IntStream.rangeClosed(1, 1000)
+                                                      .forEach(this::addTransaction);
+        allOf(runAsync(add1000Transactions),
+              runAsync(add1000Transactions),
+              runAsync(add1000Transactions),
+              runAsync(add1000Transactions)).join();
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(4000);
+        assertThat(statistics.getSum()).isEqualTo(2002000);
+        assertThat(statistics.getMax()).isEqualTo(1000);
+        assertThat(statistics.getMin()).isEqualTo(1);
+        assertThat(statistics.getAverage()).isEqualTo(500.5);
+    }
+
+    @Test
+    public void whenAddTransactionWithMoreThan60Sec_doNotAdd() throws Exception {
+        assertThat(addTransaction(300, currentTimeMillis() - 61000)).isFalse();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenAddTransactionFromFuture_doNotAdd() throws Exception {
+        assertThat(addTransaction(300, currentTimeMillis() + 2000)).isFalse();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenAddTransactionWithinAllowedSkew_countItOnceItsTimeIsReached() throws Exception {
+        repository = new BucketedTransactionRepository(60, 2000);
+
+        assertThat(addTransaction(300, currentTimeMillis() + 1500)).isTrue();
+        assertThat(addTransaction(500, currentTimeMillis() + 5000)).isFalse();
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+
+        TimeUnit.MILLISECONDS.sleep(1600);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(300);
+    }
+
+    @Test
+    public void whenTransactionIsAdded_statisticsAreUpdatedImmediately() throws Exception {
+        assertThat(addTransaction(300)).isTrue();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(300);
+
+        addTransaction(500);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(2);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(800);
+    }
+
+    @Test
+    public void whenTransactionExpires_removeFromStatistics() throws Exception {
+        addTransaction(300, currentTimeMillis() - 58000);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(300);
+
+        TimeUnit.MILLISECONDS.sleep(2100);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenBucketIsReused_forgetOldTransactions() throws Exception {
+        repository = new BucketedTransactionRepository(600);
+        long timestamp = currentTimeMillis() - 59950;
+        addTransaction(300, timestamp);
+        TimeUnit.MILLISECONDS.sleep(100);
+        addTransaction(500, timestamp + 60000);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(500);
+    }
+
+    @Test
+    public void whenBucketCountDoesNotDivideTheWindow_fail() throws Exception {
+        assertThatThrownBy(() -> new BucketedTransactionRepository(7)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        addTransaction(300);
+        addTransaction(500);
+        addTransaction(1000);
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getSum()).isEqualTo(1800);
+        assertThat(statistics.getAverage()).isEqualTo(600);
+        assertThat(statistics.getMin()).isEqualTo(300);
+        assertThat(statistics.getMax()).isEqualTo(1000);
+    }
+
+    @Test
+    public void testStatisticsForOtherWindows() throws Exception {
+        long now = currentTimeMillis();
+        addTransaction(300, now - 30000);
+        addTransaction(500, now);
+
+        assertThat(repository.getStatistics(10000).getSum()).isEqualTo(500);
+        assertThat(repository.getStatistics(60000).getSum()).isEqualTo(800);
+        assertThat(repository.getStatistics(3600000).getSum()).isEqualTo(800);
+        assertThat(repository.getStatistics(3600000).getMin()).isEqualTo(300);
+    }
+
+    @Test
+    public void whenWindowIsLongerThanAnHour_fail() throws Exception {
+        assertThatThrownBy(() -> repository.getStatistics(3600001)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> repository.getStatistics(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        IntStream.rangeClosed(1, 1000).forEach(this::addTransaction);
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getP50()).isCloseTo(500, within(5.0));
+        assertThat(statistics.getP90()).isCloseTo(900, within(9.0));
+        assertThat(statistics.getP95()).isCloseTo(950, within(9.5));
+        assertThat(statistics.getP99()).isCloseTo(990, within(9.9));
+        assertThat(repository.getStatistics(10000).getP99()).isCloseTo(990, within(9.9));
+    }
+}
@@ -0,0 +1,172 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import com.arthurtaborda.transactionmonitor.repository.TransactionRepository;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Nodes sharing the event bus of one Vert.x instance, each with its own repository and port
+ */
+@RunWith(VertxUnitRunner.class)
+public class ClusterStatisticsTest {
+
+    private static final int PORT = 9191;
+    private static final int NODES = 3;
+
+    private Vertx vertx;
+    private TransactionRepository[] repositories;
+    private ClusterStatistics[] clusterStatistics;
+
+    @Before
+    public void setUp(TestContext context) throws Exception {
+        vertx = Vertx.vertx();
+        repositories = new TransactionRepository[NODES];
+        clusterStatistics = new ClusterStatistics[NODES];
+        for (int i = 0; i < NODES; i++) {
+            repositories[i] = new BucketedTransactionRepository();
+            clusterStatistics[i] = startNode(context, PORT + i, repositories[i]);
+        }
+        for (ClusterStatistics node : clusterStatistics) {
+            awaitPeers(node, NODES - 1);
+        }
+    }
+
+    private ClusterStatistics startNode(TestContext context, int port, TransactionRepository repository) {
+        return startNode(context, port, repository, null);
+    }
+
+    private ClusterStatistics startNode(TestContext context, int port, TransactionRepository repository,
+                                        Executor handlerExecutor) {
+        ClusterStatistics node = new ClusterStatistics(vertx, repository);
+        node.start();
+        RestApi verticle = new RestApi(port, repository, new DimensionStatistics(), new TopTransactions(), node,
+                                       handlerExecutor);
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("port", port));
+        vertx.deployVerticle(verticle, options, context.asyncAssertSuccess());
+        return node;
+    }
+
+    private static void awaitPeers(ClusterStatistics node, int peers) throws InterruptedException {
+        long deadline = currentTimeMillis() + 5000;
+        while (node.getPeerCount() != peers && currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertThat(node.getPeerCount()).isEqualTo(peers);
+    }
+
+    @After
+    public void tearDown(TestContext context) throws Exception {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void whenTransactionsAreSpreadOverNodes_mergeTheExactStatistics() {
+        long now = currentTimeMillis();
+        repositories[0].addTransaction(10.006, now);
+        repositories[1].addTransaction(20.006, now);
+        repositories[2].addTransaction(5, now);
+        repositories[2].addTransaction(100, now);
+
+        // rounding every node before merging would give 135.0
+        given().port(PORT)
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(200)
+               .body("count", equalTo(4))
+               .body("sum", equalTo(135.01f))
+               .body("min", equalTo(5.0f))
+               .body("max", equalTo(100.0f))
+               .body("nodes", equalTo(3));
+
+        given().port(PORT + 1)
+               .queryParam("window", "10s")
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(200)
+               .body("count", equalTo(4))
+               .body("nodes", equalTo(3));
+    }
+
+    @Test
+    public void whenScopeIsNode_returnOnlyTheStatisticsOfTheNode() {
+        long now = currentTimeMillis();
+        repositories[0].addTransaction(10, now);
+        repositories[1].addTransaction(20, now);
+
+        given().port(PORT + 1)
+               .queryParam("scope", "node")
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(200)
+               .body("count", equalTo(1))
+               .body("sum", equalTo(20.0f));
+    }
+
+    @Test
+    public void whenNodeLeaves_doNotWaitForIt(TestContext context) throws Exception {
+        TransactionRepository repository = new BucketedTransactionRepository();
+        repository.addTransaction(10, currentTimeMillis());
+        ClusterStatistics node = startNode(context, PORT + NODES, repository);
+        awaitPeers(clusterStatistics[0], NODES);
+
+        given().port(PORT)
+               .when()
+               .get("/statistics")
+               .then()
+               .body("count", equalTo(1))
+               .body("nodes", equalTo(NODES + 1));
+
+        node.stop();
+        awaitPeers(clusterStatistics[0], NODES - 1);
+
+        given().port(PORT)
+               .when()
+               .get("/statistics")
+               .then()
+               .body("count", equalTo(0))
+               .body("nodes", equalTo(NODES));
+    }
+
+    @Test
+    public void whenHandlersRunOffTheEventLoop_mergeTheStatisticsOfEveryNode(TestContext context) throws Exception {
+        TransactionRepository repository = new BucketedTransactionRepository();
+        long now = currentTimeMillis();
+        repository.addTransaction(10, now);
+        repositories[0].addTransaction(20, now);
+        ClusterStatistics node = startNode(context, PORT + NODES, repository,
+                                           TransactionMonitor.createHandlerExecutor("worker", vertx));
+        awaitPeers(node, NODES);
+
+        for (int i = 0; i < 20; i++) {
+            given().port(PORT + NODES)
+                   .when()
+                   .get("/statistics")
+                   .then()
+                   .statusCode(200)
+                   .body("count", equalTo(2))
+                   .body("sum", equalTo(30.0f))
+                   .body("nodes", equalTo(NODES + 1));
+        }
+    }
+}
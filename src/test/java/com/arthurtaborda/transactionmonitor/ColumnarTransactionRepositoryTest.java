@@ -0,0 +1,108 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.ColumnarTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.Transaction;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ColumnarTransactionRepositoryTest {
+
+    private ColumnarTransactionRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new ColumnarTransactionRepository(8192);
+    }
+
+    private boolean addTransaction(int amount) {
+        return addTransaction(amount, currentTimeMillis());
+    }
+
+    private boolean addTransaction(int amount, long timestamp) {
+        return repository.addTransaction(new Transaction(amount, timestamp));
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        Runnable add1000Transactions = () -> IntStream.rangeClosed(1, 1000)
+                                                      .forEach(this::addTransaction);
+        allOf(runAsync(add1000Transactions),
+              runAsync(add1000Transactions),
+              runAsync(add1000Transactions),
+              runAsync(add1000Transactions)).join();
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(4000);
+        assertThat(statistics.getSum()).isEqualTo(2002000);
+        assertThat(statistics.getMax()).isEqualTo(1000);
+        assertThat(statistics.getMin()).isEqualTo(1);
+        assertThat(repository.size()).isEqualTo(4000);
+    }
+
+    @Test
+    public void whenAddTransactionWithMoreThan60Sec_doNotAdd() throws Exception {
+        assertThat(addTransaction(300, currentTimeMillis() - 61000)).isFalse();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+        assertThat(repository.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void forEachTransaction_passTransactionsInArrivalOrder() throws Exception {
+        long now = currentTimeMillis();
+        addTransaction(300, now - 1000);
+        addTransaction(100, now - 5000);
+        addTransaction(200, now);
+
+        List<Double> amounts = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        int count = repository.forEachTransaction((amount, timestamp) -> {
+            amounts.add(amount);
+            timestamps.add(timestamp);
+        });
+
+        assertThat(count).isEqualTo(3);
+        assertThat(amounts).containsExactly(300.0, 100.0, 200.0);
+        assertThat(timestamps).containsExactly(now - 1000, now - 5000, now);
+    }
+
+    @Test
+    public void whenTransactionsExpire_moveTheHeadForward() throws Exception {
+        long now = currentTimeMillis();
+        addTransaction(100, now - 59500);
+        addTransaction(200, now - 59500);
+        addTransaction(300, now);
+
+        TimeUnit.MILLISECONDS.sleep(1600);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.size()).isEqualTo(1);
+        assertThat(repository.forEachTransaction((amount, timestamp) -> assertThat(amount).isEqualTo(300))).isEqualTo(1);
+    }
+
+    @Test
+    public void whenRingIsFull_doNotAdd() throws Exception {
+        repository = new ColumnarTransactionRepository(2);
+
+        assertThat(addTransaction(100)).isTrue();
+        assertThat(addTransaction(200)).isTrue();
+        assertThat(addTransaction(300)).isFalse();
+        assertThat(addTransaction(400)).isFalse();
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getSum()).isEqualTo(300);
+        assertThat(repository.getDropped()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,92 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.DurableTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.FakeTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.MaintenanceScheduler;
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.Transaction;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DurableTransactionRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MaintenanceScheduler scheduler;
+    private DurableTransactionRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new MaintenanceScheduler(false);
+        repository = start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.stop();
+        scheduler.stop();
+    }
+
+    private DurableTransactionRepository start() throws IOException {
+        return new DurableTransactionRepository(scheduler, new BucketedTransactionRepository(),
+                                                folder.getRoot().toPath());
+    }
+
+    @Test
+    public void whenRepositoryIsRestarted_recoverTheStatistics() throws Exception {
+        repository.addTransaction(new Transaction(300, currentTimeMillis()));
+        repository.addTransactions(new double[]{100, 200, 400}, new long[]{currentTimeMillis(), 1000, currentTimeMillis()}, 3);
+        repository.stop();
+
+        repository = start();
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getSum()).isEqualTo(800);
+        assertThat(statistics.getMax()).isEqualTo(400);
+        assertThat(statistics.getMin()).isEqualTo(100);
+    }
+
+    @Test
+    public void whenTransactionIsOld_doNotLogIt() throws Exception {
+        assertThat(repository.addTransaction(new Transaction(300, currentTimeMillis() - 60000))).isFalse();
+        repository.stop();
+
+        repository = start();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenRepositoryIsOverloaded_doNotLogTheTransactions() throws Exception {
+        repository.stop();
+        FakeTransactionRepository overloaded = new FakeTransactionRepository();
+        overloaded.setOverloaded(true);
+        repository = new DurableTransactionRepository(scheduler, overloaded, folder.getRoot().toPath());
+
+        assertThatThrownBy(() -> repository.addTransaction(new Transaction(300, currentTimeMillis())))
+                .isInstanceOf(RepositoryOverloadedException.class);
+        assertThatThrownBy(() -> repository.addTransactions(new double[]{100}, new long[]{currentTimeMillis()}, 1))
+                .isInstanceOf(RepositoryOverloadedException.class);
+        overloaded.setOverloaded(false);
+        assertThat(repository.addTransaction(new Transaction(200, currentTimeMillis()))).isTrue();
+        repository.stop();
+
+        repository = start();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(200);
+    }
+}
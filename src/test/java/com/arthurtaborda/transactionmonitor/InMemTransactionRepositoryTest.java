@@ -1,9 +1,9 @@
 package com.arthurtaborda.transactionmonitor;
 
 import com.arthurtaborda.transactionmonitor.repository.InMemTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.MaintenanceScheduler;
 import com.arthurtaborda.transactionmonitor.repository.Transaction;
 import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
-import io.vertx.core.Vertx;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -18,16 +18,19 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class InMemTransactionRepositoryTest {
 
+    private MaintenanceScheduler scheduler;
     private InMemTransactionRepository repository;
 
     @Before
     public void setUp() throws Exception {
-        repository = new InMemTransactionRepository(Vertx.vertx());
+        scheduler = new MaintenanceScheduler(false);
+        repository = new InMemTransactionRepository(scheduler);
     }
 
     @After
     public void tearDown() throws Exception {
         repository.stop();
+        scheduler.stop();
     }
 
     private void addTransaction(int amount) {
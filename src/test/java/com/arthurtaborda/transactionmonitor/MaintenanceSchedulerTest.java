@@ -0,0 +1,99 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.metrics.Metrics;
+import com.arthurtaborda.transactionmonitor.repository.MaintenanceScheduler;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MaintenanceSchedulerTest {
+
+    private MaintenanceScheduler scheduler;
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.stop();
+    }
+
+    @Test
+    public void whenTickIsSlow_runTheTicksDueRightAfterIt() throws Exception {
+        scheduler = new MaintenanceScheduler(false);
+        long[] starts = new long[6];
+        AtomicInteger ticks = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.scheduleAtFixedRate("test_slow", 20, () -> {
+            int tick = ticks.getAndIncrement();
+            if (tick < starts.length) {
+                starts[tick] = System.nanoTime();
+            }
+            if (tick == 0) {
+                sleep(100);
+            }
+            if (tick == starts.length - 1) {
+                done.countDown();
+            }
+        });
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        // the ticks due during the first one are not pushed back by it, with a fixed delay it would take 200ms
+        assertThat(TimeUnit.NANOSECONDS.toMillis(starts[5] - starts[0])).isLessThan(150);
+        assertThat(Arrays.stream(starts).allMatch(start -> start > 0)).isTrue();
+    }
+
+    @Test
+    public void whenTickFails_keepRunningTheNextOnes() throws Exception {
+        scheduler = new MaintenanceScheduler(false);
+        CountDownLatch ticks = new CountDownLatch(3);
+
+        scheduler.scheduleAtFixedRate("test_failing", 10, () -> {
+            ticks.countDown();
+            throw new IllegalStateException("Tick failed");
+        });
+
+        assertThat(ticks.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void whenVirtualThreadsAreRequested_runTheTicksOnADaemonThread() throws Exception {
+        scheduler = new MaintenanceScheduler(true);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        CountDownLatch ticked = new CountDownLatch(1);
+
+        scheduler.scheduleAtFixedRate("test_virtual", 10, () -> {
+            thread.set(Thread.currentThread());
+            ticked.countDown();
+        });
+
+        assertThat(ticked.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(thread.get().getName()).startsWith("maintenance-");
+        assertThat(thread.get().isDaemon()).isTrue();
+    }
+
+    @Test
+    public void whenTaskIsScheduled_measureTheDriftAndDurationOfItsTicks() throws Exception {
+        scheduler = new MaintenanceScheduler(false);
+        CountDownLatch ticks = new CountDownLatch(2);
+
+        scheduler.scheduleAtFixedRate("test_measured", 10, ticks::countDown);
+
+        assertThat(ticks.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(Metrics.scrape()).contains("maintenance_tick_drift_seconds_count{task=\"test_measured\"}")
+                                    .contains("maintenance_tick_seconds_count{task=\"test_measured\"}");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.QueuedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class QueuedTransactionRepositoryTest {
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final BucketedTransactionRepository delegate = new BucketedTransactionRepository();
+    private QueuedTransactionRepository repository;
+
+    @After
+    public void tearDown() throws Exception {
+        gate.countDown();
+        repository.stop();
+    }
+
+    @Test
+    public void whenTransactionsAreQueued_addThemToTheRepository() throws Exception {
+        repository = new QueuedTransactionRepository(delegate, 3, 0);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(repository.addTransaction(100, currentTimeMillis())).isTrue();
+            assertThat(repository.addTransactions(new double[]{200, 300}, new long[]{currentTimeMillis(), 1000}, 2))
+                    .isEqualTo(1);
+            awaitEmpty();
+        }
+        repository.stop();
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(20);
+        assertThat(statistics.getSum()).isEqualTo(3000);
+    }
+
+    @Test
+    public void whenTransactionIsOld_doNotQueueIt() throws Exception {
+        repository = new QueuedTransactionRepository(delegate, 3, 0);
+
+        assertThat(repository.addTransaction(100, currentTimeMillis() - 60000)).isFalse();
+        assertThat(repository.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenQueueIsFull_shedTheWholeCall() throws Exception {
+        repository = new QueuedTransactionRepository(new BucketedTransactionRepository() {
+            @Override
+            public int addTransactions(double[] amounts, long[] timestamps, int length) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return delegate.addTransactions(amounts, timestamps, length);
+            }
+        }, 4, 0);
+        long now = currentTimeMillis();
+
+        // the consumer takes the first transaction and waits at the gate
+        repository.addTransaction(100, now);
+        awaitEmpty();
+        assertThat(repository.addTransactions(new double[]{1, 2, 3}, new long[]{now, now, now}, 3)).isEqualTo(3);
+
+        Throwable overloaded = catchThrowable(() -> repository.addTransactions(new double[]{4, 5},
+                                                                               new long[]{now, now}, 2));
+        assertThat(overloaded).isInstanceOf(RepositoryOverloadedException.class);
+        assertThat(((RepositoryOverloadedException) overloaded).getRetryAfterMillis()).isPositive();
+        assertThat(repository.size()).isEqualTo(3);
+
+        assertThat(repository.addTransaction(4, now)).isTrue();
+        assertThat(catchThrowable(() -> repository.addTransaction(5, now)))
+                .isInstanceOf(RepositoryOverloadedException.class);
+
+        gate.countDown();
+        repository.stop();
+        assertThat(delegate.getStatistics().getCount()).isEqualTo(5);
+        assertThat(delegate.getStatistics().getSum()).isEqualTo(110);
+    }
+
+    @Test
+    public void whenRepositoryFailsToAddABatch_keepAddingTheNextOnes() throws Exception {
+        repository = new QueuedTransactionRepository(new BucketedTransactionRepository() {
+            private boolean failed;
+
+            @Override
+            public int addTransactions(double[] amounts, long[] timestamps, int length) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("Log roll failed");
+                }
+                return delegate.addTransactions(amounts, timestamps, length);
+            }
+        }, 4, 0);
+
+        assertThat(repository.addTransaction(100, currentTimeMillis())).isTrue();
+        awaitEmpty();
+        for (int i = 0; i < 10; i++) {
+            assertThat(repository.addTransaction(200, currentTimeMillis())).isTrue();
+            awaitEmpty();
+        }
+        repository.stop();
+
+        assertThat(delegate.getStatistics().getCount()).isEqualTo(10);
+        assertThat(delegate.getStatistics().getSum()).isEqualTo(2000);
+    }
+
+    @Test
+    public void whenBatchIsAtTheEdgeOfTheWindow_queueExactlyTheTransactionsCounted() throws Exception {
+        AtomicLong handed = new AtomicLong();
+        repository = new QueuedTransactionRepository(new BucketedTransactionRepository() {
+            @Override
+            public int addTransactions(double[] amounts, long[] timestamps, int length) {
+                handed.addAndGet(length);
+                return 0;
+            }
+        }, 100000, 0);
+
+        double[] amounts = new double[1000];
+        long[] timestamps = new long[1000];
+        long queued = 0;
+        for (int batch = 0; batch < 100; batch++) {
+            long now = currentTimeMillis();
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = now - 60000 + i % 2;
+            }
+            queued += repository.addTransactions(amounts, timestamps, timestamps.length);
+        }
+        repository.stop();
+
+        assertThat(handed.get()).isEqualTo(queued);
+    }
+
+    private void awaitEmpty() throws InterruptedException {
+        long deadline = currentTimeMillis() + 5000;
+        while (repository.size() > 0 && currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertThat(repository.size()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,144 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.RepositoryOverloadedException;
+import com.arthurtaborda.transactionmonitor.repository.SingleWriterTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleWriterTransactionRepositoryTest {
+
+    private SingleWriterTransactionRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new SingleWriterTransactionRepository();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.stop();
+    }
+
+    private void addTransaction(int amount) {
+        repository.addTransaction(amount, currentTimeMillis());
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(32);
+        try {
+            Runnable add1000Transactions = () -> IntStream.rangeClosed(1, 1000)
+                                                          .forEach(this::addTransaction);
+            allOf(IntStream.range(0, 32)
+                           .mapToObj(i -> runAsync(add1000Transactions, writers))
+                           .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            writers.shutdown();
+        }
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(32000);
+        assertThat(statistics.getSum()).isEqualTo(16016000);
+        assertThat(statistics.getMax()).isEqualTo(1000);
+        assertThat(statistics.getMin()).isEqualTo(1);
+        assertThat(statistics.getAverage()).isEqualTo(500.5);
+    }
+
+    @Test
+    public void whenTransactionIsAdded_statisticsIncludeItImmediately() throws Exception {
+        for (int i = 1; i <= 100; i++) {
+            assertThat(repository.addTransaction(i, currentTimeMillis())).isTrue();
+            assertThat(repository.getStatistics().getCount()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void whenBatchIsAdded_onlyAddTransactionsFromTheLastMinute() throws Exception {
+        long now = currentTimeMillis();
+        int added = repository.addTransactions(new double[]{100, 200, 400}, new long[]{now, now - 60000, now}, 3);
+
+        assertThat(added).isEqualTo(2);
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getSum()).isEqualTo(500);
+    }
+
+    @Test
+    public void whenBatchIsAtTheEdgeOfTheWindow_publishEveryClaimedSlot() throws Exception {
+        double[] amounts = new double[1000];
+        long[] timestamps = new long[1000];
+        for (int batch = 0; batch < 100; batch++) {
+            long now = currentTimeMillis();
+            for (int i = 0; i < timestamps.length; i++) {
+                amounts[i] = 1;
+                timestamps[i] = now - 60000 + i % 2;
+            }
+            repository.addTransactions(amounts, timestamps, timestamps.length);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(repository.addTransaction(5, currentTimeMillis())).isTrue();
+        }
+        assertThat(repository.getStatistics().getMax()).isEqualTo(5);
+    }
+
+    @Test
+    public void whenWriterIsStopped_shedNewTransactions() throws Exception {
+        repository.addTransaction(100, currentTimeMillis());
+        repository.stop();
+
+        assertThatThrownBy(() -> repository.addTransaction(100, currentTimeMillis()))
+                .isInstanceOf(RepositoryOverloadedException.class);
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenWriterIsStoppedWhileAdding_keepEveryTransactionThatWasAdded() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        AtomicInteger added = new AtomicInteger();
+        AtomicBoolean stopped = new AtomicBoolean();
+        try {
+            Runnable addUntilShed = () -> {
+                while (!stopped.get()) {
+                    try {
+                        repository.addTransaction(1, currentTimeMillis());
+                        added.incrementAndGet();
+                    } catch (RepositoryOverloadedException e) {
+                        stopped.set(true);
+                    }
+                }
+            };
+            CompletableFuture<Void> adding = allOf(IntStream.range(0, 4)
+                                                            .mapToObj(i -> runAsync(addUntilShed, writers))
+                                                            .toArray(CompletableFuture[]::new));
+            Thread.sleep(50);
+            repository.stop();
+            adding.join();
+        } finally {
+            writers.shutdown();
+        }
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(added.get());
+    }
+
+    @Test
+    public void whenRingSizeIsNotAPowerOfTwo_throwException() throws Exception {
+        assertThatThrownBy(() -> new SingleWriterTransactionRepository(1000, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
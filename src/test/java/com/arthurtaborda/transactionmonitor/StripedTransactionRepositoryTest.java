@@ -0,0 +1,156 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.StripedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.Transaction;
+import com.arthurtaborda.transactionmonitor.repository.TransactionStatistics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StripedTransactionRepositoryTest {
+
+    private StripedTransactionRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new StripedTransactionRepository();
+    }
+
+    private boolean addTransaction(int amount) {
+        return addTransaction(amount, currentTimeMillis());
+    }
+
+    private boolean addTransaction(int amount, long timestamp) {
+        return repository.addTransaction(new Transaction(amount, timestamp));
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(32);
+        try {
+            Runnable add1000Transactions = () -> IntStream.rangeClosed(1, 1000)
+                                                          .forEach(this::addTransaction);
+            allOf(IntStream.range(0, 32)
+                           .mapToObj(i -> runAsync(add1000Transactions, writers))
+                           .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            writers.shutdown();
+        }
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(32000);
+        assertThat(statistics.getSum()).isEqualTo(16016000);
+        assertThat(statistics.getMax()).isEqualTo(1000);
+        assertThat(statistics.getMin()).isEqualTo(1);
+        assertThat(statistics.getAverage()).isEqualTo(500.5);
+    }
+
+    @Test
+    public void whenAddTransactionWithMoreThan60Sec_doNotAdd() throws Exception {
+        assertThat(addTransaction(300, currentTimeMillis() - 61000)).isFalse();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenTransactionIsInTheBucketThatLeftTheWindow_doNotAdd() throws Exception {
+        long now;
+        do {
+            now = currentTimeMillis();
+        } while (now % 1000 > 900);
+        // less than 60 seconds old, but in the bucket 60 seconds before the current one
+        long timestamp = (now / 1000 - 60) * 1000 + 999;
+
+        assertThat(addTransaction(300, timestamp)).isFalse();
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenAddTransactionFromFuture_doNotAdd() throws Exception {
+        assertThat(addTransaction(300, currentTimeMillis() + 2000)).isFalse();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenAddTransactionWithinAllowedSkew_countItOnceItsTimeIsReached() throws Exception {
+        repository = new StripedTransactionRepository(60, 2000);
+
+        assertThat(addTransaction(300, currentTimeMillis() + 1500)).isTrue();
+        assertThat(addTransaction(500, currentTimeMillis() + 5000)).isFalse();
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+
+        TimeUnit.MILLISECONDS.sleep(1600);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(300);
+    }
+
+    @Test
+    public void whenTransactionIsAdded_statisticsAreUpdatedImmediately() throws Exception {
+        assertThat(addTransaction(300)).isTrue();
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(300);
+
+        addTransaction(500);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(2);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(800);
+    }
+
+    @Test
+    public void whenTransactionExpires_removeFromStatistics() throws Exception {
+        addTransaction(300, currentTimeMillis() - 58000);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(300);
+
+        TimeUnit.MILLISECONDS.sleep(2100);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(0);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenBucketIsReused_forgetOldTransactions() throws Exception {
+        repository = new StripedTransactionRepository(600);
+        long timestamp = currentTimeMillis() - 59950;
+        addTransaction(300, timestamp);
+        TimeUnit.MILLISECONDS.sleep(100);
+        addTransaction(500, timestamp + 60000);
+
+        assertThat(repository.getStatistics().getCount()).isEqualTo(1);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(500);
+    }
+
+    @Test
+    public void whenBucketCountDoesNotDivideTheWindow_fail() throws Exception {
+        assertThatThrownBy(() -> new StripedTransactionRepository(7)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        addTransaction(300);
+        addTransaction(500);
+        addTransaction(1000);
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getSum()).isEqualTo(1800);
+        assertThat(statistics.getAverage()).isEqualTo(600);
+        assertThat(statistics.getMin()).isEqualTo(300);
+        assertThat(statistics.getMax()).isEqualTo(1000);
+    }
+}
@@ -0,0 +1,137 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.Dimension;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.FakeTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.HeavyHitter;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import com.arthurtaborda.transactionmonitor.repository.Transaction;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionBatchTest {
+
+    private FakeTransactionRepository repository;
+    private DimensionStatistics dimensions;
+    private TopTransactions top;
+    private TransactionBatch batch;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new FakeTransactionRepository();
+    }
+
+    private boolean send(boolean ndjson, String body, int chunkSize) {
+        dimensions = new DimensionStatistics();
+        top = new TopTransactions();
+        batch = new TransactionBatch(repository, dimensions, top, new TransactionParser(), ndjson);
+        for (int i = 0; i < body.length(); i += chunkSize) {
+            batch.handle(Buffer.buffer(body.substring(i, Math.min(body.length(), i + chunkSize))));
+        }
+        return batch.end();
+    }
+
+    private static String transaction(int amount, long timestamp) {
+        return new TransactionRequest(amount, timestamp).toJson();
+    }
+
+    @Test
+    public void whenArrayArrivesInChunks_parseEveryTransaction() {
+        long now = currentTimeMillis();
+        String body = "[" + transaction(100, now) + ", " + transaction(200, now - 61000) + ",\n"
+                + "{\"amount\":\"x\",\"timestamp\":1,\"note\":\"}]\\\"\"}," + transaction(300, now) + "]";
+
+        for (int chunkSize = 1; chunkSize <= body.length(); chunkSize++) {
+            repository.clear();
+            assertThat(send(false, body, chunkSize)).isTrue();
+            assertThat(batch.getAccepted()).isEqualTo(2);
+            assertThat(batch.getRejected()).isEqualTo(1);
+            assertThat(batch.getInvalid()).isEqualTo(1);
+            assertThat(repository.getStatistics().getSum()).isEqualTo(400);
+        }
+    }
+
+    @Test
+    public void whenNdjsonArrivesInChunks_parseEveryLine() {
+        long now = currentTimeMillis();
+        String body = transaction(100, now) + "\r\n\n" + "not json\n" + transaction(200, now);
+
+        for (int chunkSize = 1; chunkSize <= body.length(); chunkSize++) {
+            repository.clear();
+            assertThat(send(true, body, chunkSize)).isTrue();
+            assertThat(batch.getAccepted()).isEqualTo(2);
+            assertThat(batch.getInvalid()).isEqualTo(1);
+            assertThat(repository.getStatistics().getSum()).isEqualTo(300);
+        }
+    }
+
+    @Test
+    public void whenBatchIsLargerThanBatchSize_applyEverything() {
+        StringBuilder body = new StringBuilder();
+        long now = currentTimeMillis();
+        int count = TransactionBatch.BATCH_SIZE * 2 + 10;
+        for (int i = 0; i < count; i++) {
+            body.append(transaction(1, now)).append('\n');
+        }
+
+        assertThat(send(true, body.toString(), 4096)).isTrue();
+        assertThat(batch.getAccepted()).isEqualTo(count);
+        assertThat(repository.getStatistics().getCount()).isEqualTo(count);
+    }
+
+    @Test
+    public void whenArrayIsMalformed_reportIncompleteBatch() {
+        long now = currentTimeMillis();
+
+        assertThat(send(false, "[" + transaction(100, now) + " 5]", 3)).isFalse();
+        assertThat(batch.getAccepted()).isEqualTo(1);
+        assertThat(send(false, "[" + transaction(100, now), 3)).isFalse();
+        assertThat(send(false, "{}", 3)).isFalse();
+        assertThat(send(false, " [ ] ", 1)).isTrue();
+    }
+
+    @Test
+    public void whenTransactionIsTooLong_reportIncompleteBatch() {
+        long now = currentTimeMillis();
+        StringBuilder merchant = new StringBuilder();
+        while (merchant.length() < TransactionParser.MAX_LENGTH) {
+            merchant.append('x');
+        }
+        String tooLong = "{\"amount\":300,\"timestamp\":" + now + ",\"merchant\":\"" + merchant + "\"}";
+
+        assertThat(send(false, "[" + transaction(100, now) + "," + tooLong + "," + transaction(200, now) + "]", 1024))
+                .isFalse();
+        assertThat(batch.getAccepted()).isEqualTo(1);
+        assertThat(batch.getInvalid()).isEqualTo(1);
+
+        assertThat(send(true, transaction(100, now) + "\n" + tooLong + "\n" + transaction(200, now), 1024)).isFalse();
+        assertThat(batch.getAccepted()).isEqualTo(1);
+        assertThat(batch.getInvalid()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenTransactionsAreShed_leaveThemOutOfDimensionsAndTop() {
+        long now = currentTimeMillis();
+        String body = "{\"amount\":300,\"timestamp\":" + now + ",\"merchant\":\"acme\"}\n"
+                + transaction(200, now) + "\n";
+
+        repository.setOverloaded(true);
+        assertThat(send(true, body, 7)).isTrue();
+        assertThat(batch.getShed()).isEqualTo(2);
+        assertThat(dimensions.getStatistics(Dimension.MERCHANT, DimensionStatistics.key("acme")).getCount())
+                .isEqualTo(0);
+        assertThat(top.getLargest(10)).isEmpty();
+
+        repository.setOverloaded(false);
+        assertThat(send(true, body, 7)).isTrue();
+        assertThat(dimensions.getStatistics(Dimension.MERCHANT, DimensionStatistics.key("acme")).getSum())
+                .isEqualTo(300);
+        assertThat(top.getLargest(10)).extracting(Transaction::getAmount).containsExactly(300.0, 200.0);
+        assertThat(top.getMostFrequent(Dimension.MERCHANT, 10)).extracting(HeavyHitter::getValue)
+                                                               .containsExactly("acme");
+    }
+}
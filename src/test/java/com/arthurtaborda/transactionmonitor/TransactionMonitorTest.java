@@ -0,0 +1,109 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.repository.BucketedTransactionRepository;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import com.arthurtaborda.transactionmonitor.repository.TopTransactions;
+import io.restassured.http.ContentType;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.stream.IntStream;
+
+import static io.restassured.RestAssured.given;
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.equalTo;
+
+@RunWith(VertxUnitRunner.class)
+public class TransactionMonitorTest {
+
+    private static final int PORT = 9091;
+    private static final int HANDLER_THREADS_PORT = 9092;
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp(TestContext context) throws Exception {
+        vertx = Vertx.vertx();
+        TransactionMonitor.deploy(vertx, PORT, new BucketedTransactionRepository(), 4)
+                          .setHandler(context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) throws Exception {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void whenSeveralInstancesAreDeployed_theyShareThePortAndTheRepository() {
+        IntStream.range(0, 20)
+                 .forEach(i -> given().port(PORT)
+                                      .body(new TransactionRequest(10, currentTimeMillis()).toJson())
+                                      .contentType(ContentType.JSON)
+                                      .when()
+                                      .post("/transactions")
+                                      .then()
+                                      .statusCode(201));
+
+        given().port(PORT)
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(200)
+               .body("count", equalTo(20))
+               .body("sum", equalTo(200.0f));
+    }
+
+    @Test
+    public void whenHandlersRunOffTheEventLoop_respondTheSame(TestContext context) {
+        for (String threads : new String[]{"worker", "virtual"}) {
+            Vertx handlerVertx = Vertx.vertx();
+            Async deployed = context.async();
+            TransactionMonitor.deploy(handlerVertx, HANDLER_THREADS_PORT, new BucketedTransactionRepository(),
+                                      new DimensionStatistics(), new TopTransactions(), false,
+                                      TransactionMonitor.createHandlerExecutor(threads, handlerVertx), 2)
+                              .setHandler(context.asyncAssertSuccess(result -> deployed.complete()));
+            deployed.awaitSuccess(5000);
+
+            IntStream.range(0, 10)
+                     .forEach(i -> given().port(HANDLER_THREADS_PORT)
+                                          .body(new TransactionRequest(10, currentTimeMillis()).toJson())
+                                          .contentType(ContentType.JSON)
+                                          .when()
+                                          .post("/transactions")
+                                          .then()
+                                          .statusCode(201));
+            given().port(HANDLER_THREADS_PORT)
+                   .body("{\"amount\":10}")
+                   .contentType(ContentType.JSON)
+                   .when()
+                   .post("/transactions")
+                   .then()
+                   .statusCode(400);
+
+            given().port(HANDLER_THREADS_PORT)
+                   .when()
+                   .get("/statistics")
+                   .then()
+                   .statusCode(200)
+                   .body("count", equalTo(10))
+                   .body("sum", equalTo(100.0f));
+
+            Async closed = context.async();
+            handlerVertx.close(context.asyncAssertSuccess(result -> closed.complete()));
+            closed.awaitSuccess(5000);
+        }
+    }
+
+    @Test
+    public void whenHandlerThreadsAreUnknown_throwException() {
+        assertThatThrownBy(() -> TransactionMonitor.createHandlerExecutor("fibers", vertx))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,132 @@
+package com.arthurtaborda.transactionmonitor;
+
+import com.arthurtaborda.transactionmonitor.TransactionParser.Result;
+import com.arthurtaborda.transactionmonitor.repository.Dimension;
+import com.arthurtaborda.transactionmonitor.repository.DimensionStatistics;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.slf4j.LoggerFactory.getLogger;
+
+public class TransactionParserTest {
+
+    private static final Logger LOGGER = getLogger(TransactionParserTest.class.getName());
+
+    private final TransactionParser parser = new TransactionParser();
+
+    private Result parse(String json) {
+        return parser.parse(Buffer.buffer(json));
+    }
+
+    @Test
+    public void whenJsonIsValid_readAmountAndTimestamp() {
+        assertThat(parse("{\"amount\": 12.3, \"timestamp\": 1506979417000}")).isEqualTo(Result.VALID);
+        assertThat(parser.getAmount()).isEqualTo(12.3);
+        assertThat(parser.getTimestamp()).isEqualTo(1506979417000L);
+    }
+
+    @Test
+    public void whenJsonHasOtherFields_ignoreThem() {
+        assertThat(parse("{\"id\":\"a\\\"b\",\"tags\":[1,{\"x\":null},true],\"timestamp\":5,\"amount\":-1e2}"))
+                .isEqualTo(Result.VALID);
+        assertThat(parser.getAmount()).isEqualTo(-100);
+        assertThat(parser.getTimestamp()).isEqualTo(5);
+    }
+
+    @Test
+    public void whenJsonHasDimensions_readTheirKeys() {
+        assertThat(parse("{\"amount\":1,\"timestamp\":5,\"merchant\":\"acme\",\"currency\":\"EUR\"}"))
+                .isEqualTo(Result.VALID);
+        assertThat(parser.getDimensionKey(Dimension.MERCHANT)).isEqualTo(DimensionStatistics.key("acme"));
+        assertThat(parser.getDimensionKey(Dimension.CURRENCY)).isEqualTo(DimensionStatistics.key("EUR"));
+        assertThat(parser.getDimensionKey(Dimension.ACCOUNT)).isEqualTo(DimensionStatistics.NO_KEY);
+
+        assertThat(parse("{\"amount\":1,\"timestamp\":5,\"merchant\":\"caf\\u00e9 \\\"x\\\"\",\"account\":null}"))
+                .isEqualTo(Result.VALID);
+        assertThat(parser.getDimensionKey(Dimension.MERCHANT)).isEqualTo(DimensionStatistics.key("caf\u00e9 \"x\""));
+        assertThat(parser.getDimensionKey(Dimension.CURRENCY)).isEqualTo(DimensionStatistics.NO_KEY);
+        assertThat(parser.getDimensionKey(Dimension.ACCOUNT)).isEqualTo(DimensionStatistics.NO_KEY);
+
+        assertThat(parse("{\"amount\":1,\"timestamp\":5,\"merchant\":42}")).isEqualTo(Result.DIMENSION_INVALID);
+    }
+
+    @Test
+    public void whenDocumentIsLargerThanTheLimit_reportItTooLarge() {
+        String json = "{\"amount\":1,\"timestamp\":5}";
+        StringBuilder padded = new StringBuilder(json);
+        while (padded.length() < TransactionParser.MAX_LENGTH) {
+            padded.append(' ');
+        }
+
+        assertThat(parse(padded.toString())).isEqualTo(Result.VALID);
+        assertThat(parse(padded.append(' ').toString())).isEqualTo(Result.TOO_LARGE);
+    }
+
+    @Test
+    public void testNumberConversion() {
+        String[] amounts = {"0", "-0.5", "0.1", "123.456", "1E22", "4.9e-324", "12345678901234567890.5",
+                "0.30000000000000004", "9007199254740993", "1.7976931348623157e308"};
+        for (String amount : amounts) {
+            assertThat(parse("{\"amount\":" + amount + ",\"timestamp\":0}")).isEqualTo(Result.VALID);
+            assertThat(parser.getAmount()).as(amount).isEqualTo(Double.parseDouble(amount));
+        }
+    }
+
+    @Test
+    public void whenFieldsAreMissingOrInvalid_reportTheSameErrorsAsBefore() {
+        assertThat(parse("{\"timestamp\":1}")).isEqualTo(Result.AMOUNT_REQUIRED);
+        assertThat(parse("{\"amount\":null,\"timestamp\":1}")).isEqualTo(Result.AMOUNT_REQUIRED);
+        assertThat(parse("{\"amount\":\"300\",\"timestamp\":1}")).isEqualTo(Result.AMOUNT_INVALID);
+        assertThat(parse("{\"amount\":[],\"timestamp\":1}")).isEqualTo(Result.AMOUNT_INVALID);
+        assertThat(parse("{\"amount\":1e400,\"timestamp\":1}")).isEqualTo(Result.AMOUNT_INVALID);
+        assertThat(parse("{\"amount\":-1e400,\"timestamp\":1}")).isEqualTo(Result.AMOUNT_INVALID);
+        assertThat(parse("{\"amount\":1}")).isEqualTo(Result.TIMESTAMP_REQUIRED);
+        assertThat(parse("{\"amount\":1,\"timestamp\":true}")).isEqualTo(Result.TIMESTAMP_INVALID);
+        assertThat(parse("{\"amount\":1,\"timestamp\":99999999999999999999}")).isEqualTo(Result.TIMESTAMP_INVALID);
+    }
+
+    @Test
+    public void whenJsonIsMalformed_reportInvalidJson() {
+        String[] documents = {"", "[]", "{", "{\"amount\":1,}", "{\"amount\":01}", "{\"amount\":1.}",
+                "{\"amount\": 400, \"timestamp\": 150703a7665000}", "{\"a\":\"\\x\"}", "{\"amount\":1} x",
+                "{\"amount\":tru}", "{amount:1}"};
+        for (String document : documents) {
+            assertThat(parse(document)).as(document).isEqualTo(Result.INVALID_JSON);
+        }
+    }
+
+    @Test
+    public void parsingDoesNotAllocate() {
+        Buffer body = Buffer.buffer("{\"amount\":1234.56,\"timestamp\":1506979417000}");
+        int iterations = 100000;
+
+        long before = allocatedBytes(() -> {
+            for (int i = 0; i < iterations; i++) {
+                new JsonObject(body.toString()).getDouble("amount");
+            }
+        });
+        long after = allocatedBytes(() -> {
+            for (int i = 0; i < iterations; i++) {
+                parser.parse(body);
+            }
+        });
+        LOGGER.info("Bytes allocated per request: JsonObject {}, TransactionParser {}",
+                    before / iterations, after / iterations);
+
+        assertThat(after / iterations).isEqualTo(0);
+    }
+
+    private static long allocatedBytes(Runnable runnable) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        runnable.run();
+        long start = threads.getThreadAllocatedBytes(threadId);
+        runnable.run();
+        return threads.getThreadAllocatedBytes(threadId) - start;
+    }
+}
@@ -5,7 +5,9 @@ import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import org.junit.After;
@@ -19,8 +21,13 @@ import java.io.IOException;
 import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.when;
 import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.emptyOrNullString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 
 @RunWith(VertxUnitRunner.class)
@@ -77,6 +84,33 @@ public class TransactionsApiTest {
                .body(equalTo("Amount is invalid"));
     }
 
+    @Test
+    public void whenTransactionRequestHasInfiniteAmount_return400() {
+        given().body("{\"amount\":1e400,\"timestamp\":" + currentTimeMillis() + "}")
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions")
+               .then()
+               .statusCode(400)
+               .body(equalTo("Amount is invalid"));
+    }
+
+    @Test
+    public void whenTransactionRequestIsTooLarge_return413() {
+        StringBuilder merchant = new StringBuilder();
+        for (int i = 0; i < TransactionParser.MAX_LENGTH; i++) {
+            merchant.append('x');
+        }
+        String body = "{\"amount\":300,\"timestamp\":" + currentTimeMillis() + ",\"merchant\":\"" + merchant + "\"}";
+        given().body(body)
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions")
+               .then()
+               .statusCode(413)
+               .body(equalTo("Transaction is too large"));
+    }
+
     @Test
     public void whenTransactionRequestHasMissingTimestamp_return400() {
         given().body(new TransactionRequest(300, null).toJson())
@@ -162,4 +196,295 @@ public class TransactionsApiTest {
                 .body("max", equalTo(300.0f))
                 .body("count", equalTo(1));
     }
+
+    @Test
+    public void whenBatchIsPosted_returnCounts() {
+        String body = "[" + new TransactionRequest(300, currentTimeMillis()).toJson() + ","
+                + new TransactionRequest(300, currentTimeMillis() - 61000).toJson() + ","
+                + new TransactionRequest(null, currentTimeMillis()).toJson() + "]";
+
+        given().body(body)
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions/batch")
+               .then()
+               .statusCode(200)
+               .body("accepted", equalTo(1))
+               .body("rejected", equalTo(1))
+               .body("invalid", equalTo(1));
+    }
+
+    @Test
+    public void whenNdjsonBatchIsPosted_returnCounts() {
+        String body = new TransactionRequest(300, currentTimeMillis()).toJson() + "\n"
+                + new TransactionRequest(500, currentTimeMillis()).toJson() + "\n";
+
+        given().body(body.getBytes(UTF_8))
+               .contentType("application/x-ndjson")
+               .when()
+               .post("/transactions/batch")
+               .then()
+               .statusCode(200)
+               .body("accepted", equalTo(2));
+    }
+
+    @Test
+    public void whenRepositoryIsOverloaded_return503WithRetryAfter() {
+        transactionRepository.setOverloaded(true);
+
+        given().body(new TransactionRequest(300, currentTimeMillis()).toJson())
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions")
+               .then()
+               .statusCode(503)
+               .header("Retry-After", "2");
+
+        String body = "[" + new TransactionRequest(300, currentTimeMillis()).toJson() + ","
+                + new TransactionRequest(null, currentTimeMillis()).toJson() + "]";
+        given().body(body)
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions/batch")
+               .then()
+               .statusCode(503)
+               .header("Retry-After", "2")
+               .body("accepted", equalTo(0))
+               .body("invalid", equalTo(1))
+               .body("shed", equalTo(1));
+    }
+
+    @Test
+    public void whenBatchIsNotAnArray_return400() {
+        given().body("{}")
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions/batch")
+               .then()
+               .statusCode(400);
+    }
+
+    @Test
+    public void whenWindowIsGiven_returnStatisticsForThatWindow() {
+        given().body(new TransactionRequest(300, currentTimeMillis()).toJson())
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions");
+
+        when()
+                .get("/statistics?window=1m")
+                .then()
+                .statusCode(200)
+                .body("count", equalTo(1));
+    }
+
+    @Test
+    public void whenWindowIsInvalid_return400() {
+        when()
+                .get("/statistics?window=5 minutes")
+                .then()
+                .statusCode(400)
+                .body(equalTo("Window is invalid"));
+    }
+
+    @Test
+    public void whenRangeIsInvalidOrNotArchived_return400() {
+        long now = currentTimeMillis();
+        given().queryParam("from", now)
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(400)
+               .body(equalTo("Range is invalid"));
+
+        given().queryParam("from", now)
+               .queryParam("to", now - 1000)
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(400)
+               .body(equalTo("Range is invalid"));
+
+        given().queryParam("from", now - 3600000)
+               .queryParam("to", now)
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(400)
+               .body(equalTo("Range is not supported"));
+    }
+
+    @Test
+    public void whenWindowIsNotKeptByTheRepository_return400() {
+        when()
+                .get("/statistics?window=5m")
+                .then()
+                .statusCode(400)
+                .body(equalTo("Window is not supported"));
+    }
+
+    @Test
+    public void whenSubscribedToStatisticsStream_receiveAnEventPerTick(TestContext context) {
+        Async async = context.async(2);
+        HttpClient client = vertx.createHttpClient();
+        client.getNow(PORT, "localhost", "/statistics/stream", response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertTrue(response.getHeader("Content-Type").startsWith("text/event-stream"));
+            response.handler(event -> {
+                context.assertTrue(event.toString().startsWith("data: {"));
+                context.assertEquals(0, new JsonObject(event.toString().substring(6).trim()).getInteger("count"));
+                async.countDown();
+                if (async.count() == 0) {
+                    client.close();
+                }
+            });
+        });
+    }
+
+    @Test
+    public void whenSubscribedToAlertStream_receiveThePublishedAlerts(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+        JsonObject alert = new JsonObject().put("rule", "count(10s) > 2").put("state", "firing");
+        client.getNow(PORT, "localhost", "/alerts/stream", response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertTrue(response.getHeader("Content-Type").startsWith("text/event-stream"));
+            StringBuilder events = new StringBuilder();
+            response.handler(chunk -> {
+                events.append(chunk.toString());
+                if (events.toString().equals(":\n\n")) {
+                    vertx.eventBus().publish(AlertEngine.ALERTS_ADDRESS, alert);
+                } else if (events.toString().endsWith("\n\n")) {
+                    context.assertEquals(":\n\ndata: " + alert.encode() + "\n\n", events.toString());
+                    client.close();
+                    async.complete();
+                }
+            });
+        });
+    }
+
+    @Test
+    public void whenStatisticsDidNotChange_return304() {
+        String etag = when().get("/statistics")
+                            .then()
+                            .statusCode(200)
+                            .header("ETag", not(is(emptyOrNullString())))
+                            .extract()
+                            .header("ETag");
+
+        given().header("If-None-Match", etag)
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(304)
+               .header("ETag", equalTo(etag));
+
+        given().body(new TransactionRequest(300, currentTimeMillis()).toJson())
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions");
+
+        given().header("If-None-Match", etag)
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(200)
+               .header("ETag", not(equalTo(etag)))
+               .body("count", equalTo(1));
+    }
+
+    @Test
+    public void whenStatisticsAreRequestedForAMerchant_returnOnlyItsTransactions() {
+        long now = currentTimeMillis();
+        for (String body : new String[]{"{\"amount\":300,\"timestamp\":" + now + ",\"merchant\":\"acme\"}",
+                "{\"amount\":100,\"timestamp\":" + now + ",\"merchant\":\"acme\",\"currency\":\"EUR\"}",
+                "{\"amount\":50,\"timestamp\":" + now + ",\"merchant\":\"initech\"}"}) {
+            given().body(body)
+                   .contentType(ContentType.JSON)
+                   .when()
+                   .post("/transactions")
+                   .then()
+                   .statusCode(201);
+        }
+
+        given().queryParam("merchant", "acme")
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(200)
+               .body("count", equalTo(2))
+               .body("sum", equalTo(400.0f))
+               .body("min", equalTo(100.0f));
+
+        given().queryParam("currency", "EUR")
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(200)
+               .body("count", equalTo(1));
+
+        given().queryParam("merchant", "acme")
+               .queryParam("currency", "EUR")
+               .when()
+               .get("/statistics")
+               .then()
+               .statusCode(400);
+    }
+
+    @Test
+    public void whenDimensionIsNotAString_return400() {
+        given().body("{\"amount\":300,\"timestamp\":" + currentTimeMillis() + ",\"merchant\":1}")
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions")
+               .then()
+               .statusCode(400)
+               .body(equalTo("Merchant, currency and account must be strings"));
+    }
+
+    @Test
+    public void whenTopIsRequested_returnLargestTransactionsAndMostFrequentValues() {
+        long now = currentTimeMillis();
+        given().body("[{\"amount\":7000,\"timestamp\":" + now + ",\"currency\":\"JPY\"},"
+                     + "{\"amount\":9000,\"timestamp\":" + now + ",\"currency\":\"JPY\"},"
+                     + "{\"amount\":8000,\"timestamp\":" + now + ",\"currency\":\"USD\"}]")
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions/batch")
+               .then()
+               .statusCode(200);
+
+        given().queryParam("k", 2)
+               .when()
+               .get("/statistics/top")
+               .then()
+               .statusCode(200)
+               .body("largest.amount", contains(9000.0f, 8000.0f))
+               .body("currency.value", contains("JPY", "USD"))
+               .body("currency.count", contains(2, 1));
+
+        given().queryParam("k", 0)
+               .when()
+               .get("/statistics/top")
+               .then()
+               .statusCode(400);
+    }
+
+    @Test
+    public void whenGettingMetrics_returnTransactionCountsInPrometheusFormat() {
+        given().body(new TransactionRequest(10.0, currentTimeMillis()).toJson())
+               .contentType(ContentType.JSON)
+               .when()
+               .post("/transactions")
+               .then()
+               .statusCode(201);
+
+        when().get("/metrics")
+              .then()
+              .statusCode(200)
+              .contentType(containsString("text/plain"))
+              .body(containsString("# TYPE transactions_total counter"))
+              .body(containsString("transactions_total{result=\"accepted\"}"))
+              .body(containsString("repository_add_seconds_count"));
+    }
 }
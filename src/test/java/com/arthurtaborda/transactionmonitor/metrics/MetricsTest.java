@@ -0,0 +1,107 @@
+package com.arthurtaborda.transactionmonitor.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsTest {
+
+    @Test
+    public void whenCounterIsIncremented_scrapeItsTotal() {
+        Counter counter = Metrics.counter("test_counter_total", "result=\"ok\"", "Test counter");
+        counter.increment();
+        counter.add(2);
+
+        assertThat(counter.get()).isEqualTo(3);
+        assertThat(Metrics.scrape()).contains("# HELP test_counter_total Test counter\n" +
+                                              "# TYPE test_counter_total counter\n" +
+                                              "test_counter_total{result=\"ok\"} 3\n");
+    }
+
+    @Test
+    public void whenCounterIsRegisteredTwice_returnTheSameCounter() {
+        Counter first = Metrics.counter("test_shared_total", "Test counter");
+        Counter second = Metrics.counter("test_shared_total", "Test counter");
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void whenSeriesHaveTheSameName_scrapeThemUnderOneHeader() {
+        Metrics.counter("test_series_total", "kind=\"a\"", "Test series").increment();
+        Metrics.counter("test_series_total", "kind=\"b\"", "Test series").increment();
+
+        String scrape = Metrics.scrape();
+
+        assertThat(scrape.split("# TYPE test_series_total", -1)).hasSize(2);
+        assertThat(scrape).contains("test_series_total{kind=\"a\"} 1\ntest_series_total{kind=\"b\"} 1\n");
+    }
+
+    @Test
+    public void whenLatencyIsRecorded_scrapeQuantilesSumAndCountInSeconds() {
+        Latency latency = Metrics.latency("test_latency_seconds", "", "Test latency");
+        latency.record(1_000_000);
+        latency.record(3_000_000);
+
+        String scrape = Metrics.scrape();
+
+        assertThat(scrape).contains("# TYPE test_latency_seconds summary\n");
+        assertThat(scrape).contains("test_latency_seconds{quantile=\"0.5\"} 0.001");
+        assertThat(scrape).contains("test_latency_seconds_sum 0.00");
+        assertThat(scrape).contains("test_latency_seconds_count 2\n");
+    }
+
+    @Test
+    public void whenLatencyIsScrapedAgain_quantilesOnlyCoverTheNewDurations() {
+        Latency latency = Metrics.latency("test_interval_seconds", "", "Test latency");
+        latency.record(1_000_000);
+        Metrics.scrape();
+
+        String scrape = Metrics.scrape();
+
+        assertThat(scrape).contains("test_interval_seconds{quantile=\"0.5\"} 0\n");
+        assertThat(scrape).contains("test_interval_seconds_count 1\n");
+    }
+
+    @Test
+    public void whenGaugeIsRegisteredAgain_scrapeTheLatestValue() {
+        Metrics.gauge("test_gauge", "", "Test gauge", () -> 1);
+        Metrics.gauge("test_gauge", "", "Test gauge", () -> 2);
+
+        assertThat(Metrics.scrape()).contains("test_gauge 2\n").doesNotContain("test_gauge 1\n");
+    }
+
+    @Test
+    public void whenLockIsFree_doNotRecordWait() {
+        Latency waits = Metrics.latency("test_free_lock_seconds", "", "Test lock");
+        StampedLock lock = new StampedLock();
+
+        lock.unlockWrite(Metrics.writeLock(lock, waits));
+        lock.unlockRead(Metrics.readLock(lock, waits));
+
+        assertThat(Metrics.scrape()).contains("test_free_lock_seconds_count 0\n");
+    }
+
+    @Test
+    public void whenLockIsHeld_recordWait() throws InterruptedException {
+        Latency waits = Metrics.latency("test_held_lock_seconds", "", "Test lock");
+        StampedLock lock = new StampedLock();
+        long stamp = lock.writeLock();
+        CountDownLatch locked = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            lock.unlockRead(Metrics.readLock(lock, waits));
+            locked.countDown();
+        });
+        thread.start();
+        Thread.sleep(50);
+        lock.unlockWrite(stamp);
+
+        assertThat(locked.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(Metrics.scrape()).contains("test_held_lock_seconds_count 1\n");
+    }
+}
@@ -0,0 +1,92 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.arthurtaborda.transactionmonitor.repository.Dimension.CURRENCY;
+import static com.arthurtaborda.transactionmonitor.repository.Dimension.MERCHANT;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DimensionStatisticsTest {
+
+    private DimensionStatistics dimensions = new DimensionStatistics();
+
+    @Test
+    public void whenTransactionsHaveDifferentValues_keepStatisticsApart() throws Exception {
+        long now = currentTimeMillis();
+        dimensions.add(MERCHANT, DimensionStatistics.key("acme"), 300, now);
+        dimensions.add(MERCHANT, DimensionStatistics.key("acme"), 100, now);
+        dimensions.add(MERCHANT, DimensionStatistics.key("initech"), 50, now);
+        dimensions.add(CURRENCY, DimensionStatistics.key("acme"), 10, now);
+
+        TransactionStatistics acme = dimensions.getStatistics(MERCHANT, DimensionStatistics.key("acme"));
+        assertThat(acme.getCount()).isEqualTo(2);
+        assertThat(acme.getSum()).isEqualTo(400);
+        assertThat(acme.getMax()).isEqualTo(300);
+        assertThat(acme.getMin()).isEqualTo(100);
+        assertThat(dimensions.getStatistics(MERCHANT, DimensionStatistics.key("initech")).getSum()).isEqualTo(50);
+        assertThat(dimensions.getStatistics(CURRENCY, DimensionStatistics.key("acme")).getSum()).isEqualTo(10);
+        assertThat(dimensions.getStatistics(MERCHANT, DimensionStatistics.key("unknown")).getCount()).isEqualTo(0);
+        assertThat(dimensions.size(MERCHANT)).isEqualTo(2);
+    }
+
+    @Test
+    public void whenTransactionIsOlderThan60Sec_doNotAdd() throws Exception {
+        assertThat(dimensions.add(MERCHANT, DimensionStatistics.key("acme"), 300, currentTimeMillis() - 61000))
+                .isFalse();
+
+        assertThat(dimensions.size(MERCHANT)).isEqualTo(0);
+    }
+
+    @Test
+    public void keyOfBytesAndOfString_areTheSame() throws Exception {
+        byte[] bytes = "{\"merchant\":\"caf\u00e9\"}".getBytes(UTF_8);
+
+        assertThat(DimensionStatistics.key(bytes, 13, bytes.length - 2)).isEqualTo(DimensionStatistics.key("caf\u00e9"));
+        assertThat(DimensionStatistics.key("")).isNotEqualTo(DimensionStatistics.NO_KEY);
+    }
+
+    @Test
+    public void whenManyValuesAreAdded_growTheTables() throws Exception {
+        long now = currentTimeMillis();
+        for (int i = 0; i < 5000; i++) {
+            dimensions.add(MERCHANT, DimensionStatistics.key("merchant-" + i), i, now);
+        }
+
+        assertThat(dimensions.size(MERCHANT)).isEqualTo(5000);
+        for (int i = 0; i < 5000; i += 97) {
+            assertThat(dimensions.getStatistics(MERCHANT, DimensionStatistics.key("merchant-" + i)).getSum())
+                    .isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void whenSegmentIsFull_dropNewValues() throws Exception {
+        dimensions = new DimensionStatistics(16);
+        long now = currentTimeMillis();
+
+        // keys with the same high bits share a segment, which holds one value
+        assertThat(dimensions.add(MERCHANT, 1, 300, now)).isTrue();
+        assertThat(dimensions.add(MERCHANT, 2, 500, now)).isFalse();
+        assertThat(dimensions.add(MERCHANT, 1, 100, now)).isTrue();
+
+        assertThat(dimensions.getDroppedKeys()).isEqualTo(1);
+        assertThat(dimensions.getStatistics(MERCHANT, 1).getSum()).isEqualTo(400);
+        assertThat(dimensions.getStatistics(MERCHANT, 2).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenSegmentIsFull_evictIdleValues() throws Exception {
+        dimensions = new DimensionStatistics(16, 0, 100);
+        dimensions.add(MERCHANT, 1, 300, currentTimeMillis());
+
+        TimeUnit.MILLISECONDS.sleep(150);
+
+        assertThat(dimensions.add(MERCHANT, 2, 500, currentTimeMillis())).isTrue();
+        assertThat(dimensions.getStatistics(MERCHANT, 1).getCount()).isEqualTo(0);
+        assertThat(dimensions.getStatistics(MERCHANT, 2).getSum()).isEqualTo(500);
+    }
+}
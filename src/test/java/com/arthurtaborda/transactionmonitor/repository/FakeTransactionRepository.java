@@ -7,6 +7,8 @@ import java.util.LinkedList;
 public class FakeTransactionRepository implements TransactionRepository {
 
     private Collection<Transaction> transactions;
+    private long version = 1;
+    private boolean overloaded;
 
     public FakeTransactionRepository() {
         transactions = new LinkedList<>();
@@ -14,9 +16,13 @@ public class FakeTransactionRepository implements TransactionRepository {
 
     @Override
     public boolean addTransaction(Transaction transaction) {
+        if (overloaded) {
+            throw new RepositoryOverloadedException("Overloaded", 1500);
+        }
         boolean happenedInLastMinute = transaction.happenedInLastMinute();
         if (happenedInLastMinute) {
             transactions.add(transaction);
+            version++;
         }
         return happenedInLastMinute;
     }
@@ -27,10 +33,16 @@ public class FakeTransactionRepository implements TransactionRepository {
                                                  .filter(Transaction::happenedInLastMinute)
                                                  .mapToDouble(Transaction::getAmount)
                                                  .summaryStatistics();
-        return new TransactionStatistics(st);
+        return new TransactionStatistics(st, version);
     }
 
     public void clear() {
         transactions = new LinkedList<>();
+        overloaded = false;
+        version++;
+    }
+
+    public void setOverloaded(boolean overloaded) {
+        this.overloaded = overloaded;
     }
 }
@@ -0,0 +1,82 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class QuantileSketchTest {
+
+    private QuantileSketch sketch;
+
+    @Before
+    public void setUp() throws Exception {
+        sketch = new QuantileSketch();
+    }
+
+    @Test
+    public void whenSketchIsEmpty_returnZero() {
+        assertThat(sketch.quantile(0.5)).isEqualTo(0);
+    }
+
+    @Test
+    public void testRelativeAccuracy() {
+        Random random = new Random(42);
+        double[] amounts = new double[100000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = Math.exp(random.nextDouble() * 15) / 100;
+            sketch.add(amounts[i]);
+        }
+        Arrays.sort(amounts);
+
+        for (double quantile : new double[]{0, 0.5, 0.9, 0.95, 0.99, 1}) {
+            double expected = amounts[(int) (quantile * (amounts.length - 1))];
+            assertThat(sketch.quantile(quantile)).as("p" + quantile)
+                                                 .isCloseTo(expected, within(expected * 0.01));
+        }
+    }
+
+    @Test
+    public void whenAmountIsInfinite_countItInTheLastBin() {
+        sketch.add(Double.POSITIVE_INFINITY);
+        sketch.add(Double.NEGATIVE_INFINITY);
+        sketch.add(5);
+
+        assertThat(sketch.getCount()).isEqualTo(3);
+        assertThat(sketch.quantile(1)).isCloseTo(1e9, within(1e9 * 0.01));
+        assertThat(sketch.quantile(0)).isCloseTo(-1e9, within(1e9 * 0.01));
+        assertThat(sketch.quantile(0.5)).isCloseTo(5, within(0.05));
+    }
+
+    @Test
+    public void testNegativeAndZeroAmounts() {
+        sketch.add(-500);
+        sketch.add(0);
+        sketch.add(300);
+
+        assertThat(sketch.quantile(0)).isCloseTo(-500, within(5.0));
+        assertThat(sketch.quantile(0.5)).isEqualTo(0);
+        assertThat(sketch.quantile(1)).isCloseTo(300, within(3.0));
+    }
+
+    @Test
+    public void whenMergedSketchIsSubtracted_returnToThePreviousQuantiles() {
+        QuantileSketch other = new QuantileSketch();
+        for (int i = 1; i <= 100; i++) {
+            sketch.add(i);
+            other.add(i * 1000);
+        }
+        double median = sketch.quantile(0.5);
+
+        sketch.merge(other);
+        assertThat(sketch.quantile(0.5)).isGreaterThan(90);
+
+        sketch.subtract(other);
+        assertThat(sketch.getCount()).isEqualTo(100);
+        assertThat(sketch.quantile(0.5)).isEqualTo(median);
+    }
+}
@@ -0,0 +1,179 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class SlidingWindowTest {
+
+    private static final long NOW = 1_506_979_417_000L;
+
+    private SlidingWindow window;
+
+    @Before
+    public void setUp() throws Exception {
+        window = new SlidingWindow(60, 1000);
+    }
+
+    @Test
+    public void whenTransactionIsAdded_statisticsIncludeItImmediately() throws Exception {
+        assertThat(window.add(300, NOW, NOW)).isTrue();
+
+        TransactionStatistics statistics = window.statistics(NOW);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getSum()).isEqualTo(300);
+    }
+
+    @Test
+    public void whenTimestampIsOutsideTheWindow_doNotAdd() throws Exception {
+        assertThat(window.add(300, NOW - 60000, NOW)).isFalse();
+        assertThat(window.add(300, NOW + 1000, NOW)).isFalse();
+
+        assertThat(window.statistics(NOW).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenWindowMovesForward_expireOldBuckets() throws Exception {
+        window.add(300, NOW - 59000, NOW);
+        window.add(500, NOW - 30000, NOW);
+
+        assertThat(window.statistics(NOW).getCount()).isEqualTo(2);
+
+        TransactionStatistics statistics = window.statistics(NOW + 1000);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getSum()).isEqualTo(500);
+
+        assertThat(window.statistics(NOW + 30000).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenExtremeExpires_recomputeFromRemainingBuckets() throws Exception {
+        window.add(1000, NOW - 59000, NOW);
+        window.add(1, NOW - 58000, NOW);
+        window.add(300, NOW - 10000, NOW);
+        window.add(500, NOW, NOW);
+
+        TransactionStatistics statistics = window.statistics(NOW + 2000);
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getMin()).isEqualTo(300);
+        assertThat(statistics.getMax()).isEqualTo(500);
+        assertThat(statistics.getAverage()).isEqualTo(400);
+    }
+
+    @Test
+    public void whenWindowMovesMoreThanItsLength_clearEverything() throws Exception {
+        window.add(300, NOW, NOW);
+
+        assertThat(window.statistics(NOW + 3600000).getCount()).isEqualTo(0);
+
+        window.add(500, NOW + 3600000, NOW + 3600000);
+        assertThat(window.statistics(NOW + 3600000).getSum()).isEqualTo(500);
+    }
+
+    @Test
+    public void whenBucketsExpire_rollThemUpIntoTheParent() throws Exception {
+        SlidingWindow minutes = new SlidingWindow(61, 60000);
+        window = new SlidingWindow(60, 1000, false, minutes);
+        window.add(300, NOW - 30000, NOW);
+        window.add(100, NOW - 29000, NOW);
+        window.add(500, NOW, NOW);
+
+        StatisticsBucket merged = new StatisticsBucket();
+        window.mergeInto(merged, NOW + 300000);
+        minutes.mergeInto(merged, NOW + 300000 - 600000, NOW + 300000);
+
+        TransactionStatistics statistics = merged.toStatistics();
+        assertThat(statistics.getCount()).isEqualTo(3);
+        assertThat(statistics.getSum()).isEqualTo(900);
+        assertThat(statistics.getMin()).isEqualTo(100);
+        assertThat(statistics.getMax()).isEqualTo(500);
+        assertThat(window.statistics(NOW + 300000).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenMergingPartOfTheWindow_onlyMergeTheLatestBuckets() throws Exception {
+        window.add(300, NOW - 30000, NOW);
+        window.add(500, NOW - 5000, NOW);
+        window.add(700, NOW, NOW);
+
+        StatisticsBucket merged = new StatisticsBucket();
+        window.mergeInto(merged, NOW - 9999, NOW);
+
+        TransactionStatistics statistics = merged.toStatistics();
+        assertThat(statistics.getCount()).isEqualTo(2);
+        assertThat(statistics.getSum()).isEqualTo(1200);
+    }
+
+    @Test
+    public void whenWindowDidNotChange_returnTheSameSnapshot() throws Exception {
+        window.add(300, NOW - 30000, NOW);
+        TransactionStatistics statistics = window.statistics(NOW);
+
+        assertThat(window.statistics(NOW + 1000)).isSameAs(statistics);
+
+        window.add(500, NOW, NOW + 1000);
+        TransactionStatistics added = window.statistics(NOW + 1000);
+        assertThat(added.getVersion()).isGreaterThan(statistics.getVersion());
+
+        TransactionStatistics expired = window.statistics(NOW + 31000);
+        assertThat(expired.getVersion()).isGreaterThan(added.getVersion());
+        assertThat(expired.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenTimestampIsInAFutureBucket_countItOnceTheWindowReachesIt() throws Exception {
+        window = new SlidingWindow(60, 1000, 2, false, null);
+        window.add(300, NOW, NOW);
+        TransactionStatistics statistics = window.statistics(NOW);
+
+        assertThat(window.add(500, NOW + 2000, NOW)).isTrue();
+        assertThat(window.add(700, NOW + 3000, NOW)).isFalse();
+        assertThat(window.statistics(NOW)).isSameAs(statistics);
+        assertThat(window.statistics(NOW + 1000).getCount()).isEqualTo(1);
+
+        TransactionStatistics reached = window.statistics(NOW + 2000);
+        assertThat(reached.getCount()).isEqualTo(2);
+        assertThat(reached.getSum()).isEqualTo(800);
+        assertThat(reached.getMax()).isEqualTo(500);
+
+        assertThat(window.statistics(NOW + 60000).getCount()).isEqualTo(1);
+        assertThat(window.statistics(NOW + 62000).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenWindowMovesPastAFutureBucket_expireIt() throws Exception {
+        SlidingWindow minutes = new SlidingWindow(61, 60000);
+        window = new SlidingWindow(60, 1000, 2, false, minutes);
+        window.add(500, NOW + 2000, NOW);
+
+        assertThat(window.statistics(NOW + 120000).getCount()).isEqualTo(0);
+        assertThat(minutes.statistics(NOW + 120000).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenLargeAmountsExpire_doNotDriftFromTheSumOfTheWindow() throws Exception {
+        long now = NOW;
+        for (int second = 0; second < 100_000; second++) {
+            now += 1000;
+            window.add(second % 60 == 0 ? 987_654_321_098.37 : 0.01, now, now);
+            window.statistics(now);
+        }
+        for (int second = 0; second < 60; second++) {
+            now += 1000;
+            window.add(0.01, now, now);
+        }
+
+        TransactionStatistics statistics = window.statistics(now);
+        assertThat(statistics.getCount()).isEqualTo(60);
+        assertThat(statistics.getExactSum()).isCloseTo(0.6, offset(1e-12));
+    }
+
+    @Test
+    public void whenSkewIsAllowed_keepEnoughFutureBuckets() throws Exception {
+        assertThat(SlidingWindow.futureBuckets(0, 1000)).isEqualTo(0);
+        assertThat(SlidingWindow.futureBuckets(1, 1000)).isEqualTo(1);
+        assertThat(SlidingWindow.futureBuckets(2000, 1000)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,82 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpaceSavingTest {
+
+    private static final DimensionValues VALUES = new DimensionValues() {
+        @Override
+        public long getDimensionKey(Dimension dimension) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getDimensionValue(Dimension dimension) {
+            return "value";
+        }
+    };
+
+    private static Map<Long, Long> counts(SpaceSaving summary) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (int i = 0; i < summary.size(); i++) {
+            counts.put(summary.getKey(i), summary.getCount(i));
+        }
+        return counts;
+    }
+
+    @Test
+    public void whenThereAreFewerKeysThanCounters_countExactly() throws Exception {
+        SpaceSaving summary = new SpaceSaving(8);
+        summary.add(1, Dimension.MERCHANT, VALUES);
+        summary.add(2, Dimension.MERCHANT, VALUES);
+        summary.add(1, Dimension.MERCHANT, VALUES);
+
+        assertThat(counts(summary)).containsEntry(1L, 2L).containsEntry(2L, 1L).hasSize(2);
+        assertThat(summary.getMinCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenCountersAreFull_replaceTheLowestCount() throws Exception {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.add(1, Dimension.MERCHANT, VALUES);
+        summary.add(1, Dimension.MERCHANT, VALUES);
+        summary.add(2, Dimension.MERCHANT, VALUES);
+        summary.add(3, Dimension.MERCHANT, VALUES);
+
+        assertThat(counts(summary)).containsEntry(1L, 2L).containsEntry(3L, 2L).hasSize(2);
+        for (int i = 0; i < summary.size(); i++) {
+            if (summary.getKey(i) == 3) {
+                assertThat(summary.getError(i)).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    public void frequentKeysAreAlwaysKept() throws Exception {
+        SpaceSaving summary = new SpaceSaving(16);
+        Random random = new Random(42);
+        Map<Long, Long> exact = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // keys 0 to 3 take half of the stream, the rest is spread over 5000 keys
+            long key = random.nextBoolean() ? random.nextInt(4) : 4 + random.nextInt(5000);
+            exact.merge(key, 1L, Long::sum);
+            summary.add(key, Dimension.MERCHANT, VALUES);
+        }
+
+        Map<Long, Long> counts = counts(summary);
+        for (long key = 0; key < 4; key++) {
+            assertThat(counts).containsKey(key);
+            assertThat(counts.get(key)).isGreaterThanOrEqualTo(exact.get(key));
+        }
+        for (int i = 0; i < summary.size(); i++) {
+            long key = summary.getKey(i);
+            assertThat(summary.getCount(i) - summary.getError(i)).isLessThanOrEqualTo(exact.get(key));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StatisticsArchiveTest {
+
+    private static final long START = 1_506_978_000_000L;
+    private static final int SECONDS = 3 * 3600 + 1235;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StatisticsArchive archive;
+
+    @Before
+    public void setUp() throws Exception {
+        archive = new StatisticsArchive(folder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        archive.close();
+    }
+
+    private void appendSeconds(int from, int to) {
+        StatisticsBucket bucket = new StatisticsBucket();
+        for (int second = from; second < to; second++) {
+            // every seventh second has no transactions
+            if (second % 7 != 0) {
+                bucket.reset(-1);
+                bucket.add(amount(second));
+                bucket.add(amount(second) + 1);
+                archive.append(bucket, START + second * 1000L);
+            }
+        }
+    }
+
+    private static double amount(int second) {
+        return second % 1000;
+    }
+
+    private static void assertRange(TransactionStatistics statistics, int from, int to) {
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int second = from; second < to; second++) {
+            if (second % 7 != 0) {
+                count += 2;
+                sum += 2 * amount(second) + 1;
+                min = Math.min(min, amount(second));
+                max = Math.max(max, amount(second) + 1);
+            }
+        }
+        assertThat(statistics.getCount()).as("count from %d to %d", from, to).isEqualTo(count);
+        assertThat(statistics.getSum()).as("sum from %d to %d", from, to).isEqualTo(sum);
+        if (count > 0) {
+            assertThat(statistics.getMin()).isEqualTo(min);
+            assertThat(statistics.getMax()).isEqualTo(max);
+        }
+    }
+
+    private TransactionStatistics range(int fromSecond, int toSecond) {
+        return archive.getStatistics(START + fromSecond * 1000L, START + toSecond * 1000L);
+    }
+
+    @Test
+    public void whenRangeIsQueried_mergeTheArchivedSecondsInside() throws Exception {
+        appendSeconds(0, SECONDS);
+
+        assertRange(range(0, SECONDS - 1), 0, SECONDS - 1);
+        assertRange(range(3599, 7201), 3599, 7201);
+        assertRange(range(61, 62), 61, 62);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(SECONDS - 1);
+            int to = from + 1 + random.nextInt(SECONDS - 1 - from);
+            assertRange(range(from, to), from, to);
+        }
+    }
+
+    @Test
+    public void whenRangeIsNotWholeSeconds_includeTheSecondsItOverlaps() throws Exception {
+        appendSeconds(0, 10);
+
+        TransactionStatistics statistics = archive.getStatistics(START + 1500, START + 3001);
+        assertRange(statistics, 1, 4);
+    }
+
+    @Test
+    public void whenSecondIsStillAggregated_leaveItOut() throws Exception {
+        appendSeconds(0, 3);
+
+        assertRange(range(0, 10), 0, 2);
+    }
+
+    @Test
+    public void whenArchiveIsReopened_rebuildTheMinutesAndHoursNotAppended() throws Exception {
+        appendSeconds(0, 5000);
+        archive.close();
+
+        archive = new StatisticsArchive(folder.getRoot().toPath());
+        appendSeconds(5000, SECONDS);
+
+        assertRange(range(0, SECONDS - 1), 0, SECONDS - 1);
+        assertRange(range(3600, 7200), 3600, 7200);
+    }
+
+    @Test
+    public void whenSecondIsArchivedAgain_ignoreIt() throws Exception {
+        appendSeconds(0, 100);
+        appendSeconds(50, 60);
+
+        assertRange(range(0, 99), 0, 99);
+    }
+
+    @Test
+    public void whenRangeIsEmpty_throwException() throws Exception {
+        assertThatThrownBy(() -> archive.getStatistics(START, START)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void whenBucketExpiresFromTheWindow_archiveIt() throws Exception {
+        SlidingWindow window = new SlidingWindow(60, 1000);
+        window.setArchive(archive);
+        window.add(300, START, START);
+        window.add(500, START + 1000, START + 1000);
+
+        window.statistics(START + 62000);
+
+        TransactionStatistics statistics = archive.getStatistics(START, START + 2000);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getSum()).isEqualTo(300);
+    }
+}
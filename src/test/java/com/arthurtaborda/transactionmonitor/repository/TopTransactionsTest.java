@@ -0,0 +1,97 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TopTransactionsTest {
+
+    private final TopTransactions top = new TopTransactions();
+
+    private static DimensionValues merchant(String merchant) {
+        return new DimensionValues() {
+            @Override
+            public long getDimensionKey(Dimension dimension) {
+                return dimension == Dimension.MERCHANT ? DimensionStatistics.key(merchant) : DimensionStatistics.NO_KEY;
+            }
+
+            @Override
+            public String getDimensionValue(Dimension dimension) {
+                return dimension == Dimension.MERCHANT ? merchant : null;
+            }
+        };
+    }
+
+    @Test
+    public void getLargest_returnLargestAmountsOfTheWindow() throws Exception {
+        long now = currentTimeMillis();
+        for (int i = 1; i <= 1000; i++) {
+            top.add(i, now - i * 50, null);
+        }
+
+        List<Transaction> largest = top.getLargest(3);
+        assertThat(largest).extracting(Transaction::getAmount).containsExactly(1000.0, 999.0, 998.0);
+        assertThat(largest.get(0).getTimestamp()).isEqualTo(now - 50000);
+    }
+
+    @Test
+    public void whenTransactionIsOlderThan60Sec_doNotAdd() throws Exception {
+        assertThat(top.add(300, currentTimeMillis() - 60000, null)).isFalse();
+
+        assertThat(top.getLargest(10)).isEmpty();
+    }
+
+    @Test
+    public void getMostFrequent_returnValuesWithMostTransactions() throws Exception {
+        long now = currentTimeMillis();
+        for (int i = 0; i < 30; i++) {
+            top.add(1, now - i * 1000, merchant("acme"));
+        }
+        for (int i = 0; i < 20; i++) {
+            top.add(1, now - i * 1000, merchant("initech"));
+        }
+        top.add(1, now, merchant("hooli"));
+
+        List<HeavyHitter> hitters = top.getMostFrequent(Dimension.MERCHANT, 2);
+        assertThat(hitters).extracting(HeavyHitter::getValue).containsExactly("acme", "initech");
+        assertThat(hitters).extracting(HeavyHitter::getCount).containsExactly(30L, 20L);
+        assertThat(hitters).extracting(HeavyHitter::getError).containsExactly(0L, 0L);
+        assertThat(top.getMostFrequent(Dimension.CURRENCY, 2)).isEmpty();
+    }
+
+    @Test
+    public void whenThreadsAddToSeparateStripes_mergeThemOnRead() throws Exception {
+        TopTransactions striped = new TopTransactions(0, 4);
+        long now = currentTimeMillis();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        try {
+            CompletableFuture.allOf(IntStream.range(0, 4).mapToObj(thread -> CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 100; i++) {
+                    striped.add(thread * 100 + i, now, merchant(thread == 0 ? "acme" : "initech"));
+                }
+            }, writers)).toArray(CompletableFuture[]::new)).join();
+        } finally {
+            writers.shutdown();
+        }
+
+        assertThat(striped.getLargest(3)).extracting(Transaction::getAmount).containsExactly(399.0, 398.0, 397.0);
+        List<HeavyHitter> hitters = striped.getMostFrequent(Dimension.MERCHANT, 2);
+        assertThat(hitters).extracting(HeavyHitter::getValue).containsExactly("initech", "acme");
+        assertThat(hitters).extracting(HeavyHitter::getCount).containsExactly(300L, 100L);
+    }
+
+    @Test
+    public void whenKIsOutOfRange_throwException() throws Exception {
+        assertThatThrownBy(() -> top.getLargest(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> top.getMostFrequent(Dimension.MERCHANT, TopTransactions.MAX_K + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,85 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static java.lang.System.currentTimeMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private FakeTransactionRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath();
+        repository = new FakeTransactionRepository();
+    }
+
+    @Test
+    public void whenLogIsReopened_replayAppendedTransactions() throws Exception {
+        long now = currentTimeMillis();
+        TransactionLog log = new TransactionLog(directory, 4, 60000);
+        for (int i = 1; i <= 10; i++) {
+            log.append(i, now - i);
+        }
+        log.force();
+
+        TransactionLog reopened = new TransactionLog(directory, 4, 60000);
+        assertThat(reopened.getSegmentCount()).isEqualTo(3);
+        assertThat(reopened.replay(repository, now)).isEqualTo(10);
+
+        TransactionStatistics statistics = repository.getStatistics();
+        assertThat(statistics.getCount()).isEqualTo(10);
+        assertThat(statistics.getSum()).isEqualTo(55);
+    }
+
+    @Test
+    public void whenLogIsReopened_keepAppendingToTheLastSegment() throws Exception {
+        long now = currentTimeMillis();
+        new TransactionLog(directory, 4, 60000).append(300, now);
+
+        TransactionLog reopened = new TransactionLog(directory, 4, 60000);
+        reopened.append(500, now);
+
+        assertThat(reopened.getSegmentCount()).isEqualTo(1);
+        assertThat(new TransactionLog(directory, 4, 60000).replay(repository, now)).isEqualTo(2);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(800);
+    }
+
+    @Test
+    public void whenSegmentIsOlderThanRetention_reclaimIt() throws Exception {
+        long now = currentTimeMillis();
+        TransactionLog log = new TransactionLog(directory, 2, 60000);
+        log.append(100, now - 70000);
+        log.append(200, now - 65000);
+        log.append(300, now - 30000);
+        log.append(400, now - 1000);
+        log.append(500, now);
+
+        assertThat(log.reclaim(now)).isEqualTo(1);
+        assertThat(log.getSegmentCount()).isEqualTo(2);
+
+        TransactionLog reopened = new TransactionLog(directory, 2, 60000);
+        assertThat(reopened.replay(repository, now)).isEqualTo(3);
+        assertThat(repository.getStatistics().getSum()).isEqualTo(1200);
+    }
+
+    @Test
+    public void whenSegmentIsStillBeingWritten_doNotReclaimIt() throws Exception {
+        long now = currentTimeMillis();
+        TransactionLog log = new TransactionLog(directory, 4, 60000);
+        log.append(100, now - 70000);
+
+        assertThat(log.reclaim(now)).isEqualTo(0);
+        assertThat(log.getSegmentCount()).isEqualTo(1);
+    }
+}
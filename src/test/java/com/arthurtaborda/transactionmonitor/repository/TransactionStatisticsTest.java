@@ -0,0 +1,44 @@
+package com.arthurtaborda.transactionmonitor.repository;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static java.math.RoundingMode.FLOOR;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionStatisticsTest {
+
+    @Test
+    public void whenRounding_roundDownTheExactValueLikeBigDecimal() throws Exception {
+        double[] values = {0, -0.0, 0.29, -0.29, 0.1, 0.07, 1.005, -1.005, 123.456, 100.5, 0.001, -0.001,
+                           4.35, 1e-320, 45_035_996_273_704.95, 1e15 + 0.25, -1e300, Double.MAX_VALUE};
+        for (double value : values) {
+            assertRoundsLikeBigDecimal(value);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000_000; i++) {
+            assertRoundsLikeBigDecimal(random.nextInt(10_000_000) / 100d);
+            assertRoundsLikeBigDecimal((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(30) - 10));
+        }
+    }
+
+    @Test
+    public void whenRoundingStatistics_keepTheExactValues() throws Exception {
+        TransactionStatistics statistics = new TransactionStatistics(2, 0.58, 0.1, 0.29);
+
+        // 0.58 and 0.29 are slightly below their decimal values as doubles
+        assertThat(statistics.getSum()).isEqualTo(0.57);
+        assertThat(statistics.getExactSum()).isEqualTo(0.58);
+        assertThat(statistics.getMin()).isEqualTo(0.1);
+        assertThat(statistics.getMax()).isEqualTo(0.28);
+        assertThat(statistics.getExactMax()).isEqualTo(0.29);
+    }
+
+    private static void assertRoundsLikeBigDecimal(double value) {
+        double expected = new BigDecimal(value).setScale(2, FLOOR).doubleValue();
+        assertThat(TransactionStatistics.round(value)).as("round(%s)", value).isEqualTo(expected);
+    }
+}